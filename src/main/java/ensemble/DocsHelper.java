@@ -31,15 +31,12 @@
  */
 package ensemble;
 
-import ensemble.model.SampleInfo;
 import ensemble.pages.CategoryPage;
 import ensemble.pages.DocPage;
-import ensemble.pages.SamplePage;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import javafx.collections.ObservableList;
 
 /**
  * DocsHelper - bunch of static utility methods to help with java docs
@@ -96,24 +93,4 @@ public class DocsHelper {
         }
         return packagePage;
     }
-   
-    // Adds related sample links to doc pages
-    public static void syncDocPagesAndSamplePages(CategoryPage samplesPage) {
-        ObservableList sPages = samplesPage.getChildren();
-        Ensemble2 ensemble2 = Ensemble2.getEnsemble2();
-        for (Object oneSamplePage : sPages) {
-            if (oneSamplePage instanceof SamplePage) {
-                SampleInfo sampleInfo = ((SamplePage) oneSamplePage).getSampleInfo();
-                for (String apiClassPath : sampleInfo.getApiClasspaths()) {
-                    String path = Pages.API_DOCS + '/' + apiClassPath.replace('.', '/');
-                    DocPage docPage = (DocPage) ensemble2.getPages().getPage(path);
-                    if (docPage != null) {
-                        docPage.getRelatedSamples().add((SamplePage) oneSamplePage);
-                    }
-                }
-            } else {
-                syncDocPagesAndSamplePages((CategoryPage) oneSamplePage);
-            }
-        }
-    }
 }
@@ -37,10 +37,12 @@ import ensemble.controls.SearchBox;
 import ensemble.controls.WindowButtons;
 import ensemble.controls.WindowResizeButton;
 import ensemble.pages.SamplePage;
+import ensemble.search.SearchService;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.util.Stack;
 import javafx.animation.*;
 import javafx.application.Application;
@@ -70,6 +72,12 @@ import netscape.javascript.JSObject;
 
 /**
  * Ensemble Main Application
+ * <p>
+ * Start up is staged so the window shows as soon as possible. The stage and its chrome are shown first with a
+ * placeholder page, then the samples are loaded in the background and stream into the page tree a category at a time.
+ * A page linked to from the browser location is shown once it has loaded, which for API docs pages is once the docs
+ * have arrived after the samples. With -Densemble.startup.metrics=true the
+ * time to the first frame and the time until all the samples are in are printed.
  */
 public class Ensemble2 extends Application {
     static {
@@ -104,6 +112,11 @@ public class Ensemble2 extends Application {
     private ToolBar pageToolBar;
     private JSObject browser;
     private String docsUrl;
+    private boolean samplesLoaded = false;
+    private boolean docsLoaded = false;
+    private String pendingPagePath;
+    private long timeToFirstFrame = -1;
+    private long timeToInteractive = -1;
     
     /**
      * Get the singleton instance of Ensemble
@@ -121,6 +134,8 @@ public class Ensemble2 extends Application {
      */
     @Override public void start(final Stage stage) {
         ensemble2 = this;
+        // open the search index in the background while we build the ui
+        SearchService.warmUp();
         stage.setTitle("Ensemble");
         // set default docs location
         docsUrl = System.getProperty("docs.url") != null ?
@@ -177,7 +192,7 @@ public class Ensemble2 extends Application {
         // create main toolbar
         toolBar = new ToolBar();
         toolBar.setId("mainToolBar");
-        ImageView logo = new ImageView(new Image(Ensemble2.class.getResourceAsStream("images/logo.png")));
+        ImageView logo = new ImageView(loadImage("images/logo.png"));
         HBox.setMargin(logo, new Insets(0,0,0,5));
         toolBar.getItems().add(logo);
         Region spacer = new Region();
@@ -206,7 +221,7 @@ public class Ensemble2 extends Application {
         Region spacer2 = new Region();
         HBox.setHgrow(spacer2, Priority.ALWAYS);
         toolBar.getItems().add(spacer2);
-        ImageView searchTest = new ImageView(new Image(Ensemble2.class.getResourceAsStream("images/search-text.png")));
+        ImageView searchTest = new ImageView(loadImage("images/search-text.png"));
         toolBar.getItems().add(searchTest);
         SearchBox searchBox = new SearchBox();
         HBox.setMargin(searchBox, new Insets(0,5,0,0));
@@ -279,12 +294,10 @@ public class Ensemble2 extends Application {
         samplesButton.selectedProperty().addListener(treeButtonNotifyListener);
         docsButton.selectedProperty().addListener(treeButtonNotifyListener);
         pageTreeToolBar.getItems().addAll(allButton, samplesButton, docsButton);
-        // create page tree
+        // create page tree, the samples are loaded into it once the stage is showing
         pages = new Pages();
         proxyDialog = new ProxyDialog(stage, pages);
         proxyDialog.loadSettings();
-        proxyDialog.getDocsInBackground(true,null);
-        pages.parseSamples();
         pageTree = new TreeView();
         pageTree.setId("page-tree");
         pageTree.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
@@ -313,13 +326,13 @@ public class Ensemble2 extends Application {
         pageToolBar.setMaxSize(Double.MAX_VALUE, Control.USE_PREF_SIZE);
         if (!isApplet) {
             Button backButton = new Button();
-            backButton.setGraphic(new ImageView(new Image(Ensemble2.class.getResourceAsStream("images/back.png"))));
+            backButton.setGraphic(new ImageView(loadImage("images/back.png")));
             backButton.setOnAction(new EventHandler<ActionEvent>() {
                 public void handle(ActionEvent event) { back(); }
             });
             backButton.setMaxHeight(Double.MAX_VALUE);
             Button forwardButton = new Button();
-            forwardButton.setGraphic(new ImageView(new Image(Ensemble2.class.getResourceAsStream("images/forward.png"))));
+            forwardButton.setGraphic(new ImageView(loadImage("images/forward.png")));
             forwardButton.setOnAction(new EventHandler<ActionEvent>() {
                 public void handle(ActionEvent event) {
                     forward();
@@ -327,7 +340,7 @@ public class Ensemble2 extends Application {
             });
             forwardButton.setMaxHeight(Double.MAX_VALUE);
             Button reloadButton = new Button();
-            reloadButton.setGraphic(new ImageView(new Image(Ensemble2.class.getResourceAsStream("images/reload.png"))));
+            reloadButton.setGraphic(new ImageView(loadImage("images/reload.png")));
             reloadButton.setOnAction(new EventHandler<ActionEvent>() {
                 public void handle(ActionEvent event) {
                     reload();
@@ -343,7 +356,7 @@ public class Ensemble2 extends Application {
             HBox.setHgrow(spacer3, Priority.ALWAYS);
             Button settingsButton = new Button();
             settingsButton.setId("SettingsButton");
-            settingsButton.setGraphic(new ImageView(new Image(Ensemble2.class.getResourceAsStream("images/settings.png"))));
+            settingsButton.setGraphic(new ImageView(loadImage("images/settings.png")));
             settingsButton.setOnAction(new EventHandler<ActionEvent>() {
                 public void handle(ActionEvent event) {
                     showProxyDialog();
@@ -380,7 +393,76 @@ public class Ensemble2 extends Application {
             windowResizeButton.setManaged(false);
             this.root.getChildren().add(windowResizeButton);
         }
-        // expand first level of the tree
+        // show a placeholder until the samples are loaded, and remember any page we were linked to until it is there
+        Label loadingLabel = new Label("Loading samples...");
+        loadingLabel.getStyleClass().add("page-header");
+        pageArea.getChildren().add(loadingLabel);
+        if (isApplet) pendingPagePath = getBrowserHashLocation();
+        // show stage
+        stage.setScene(scene);
+        new AnimationTimer() {
+            @Override public void handle(long now) {
+                // the first pulse after showing is the one that renders the first frame
+                timeToFirstFrame = ManagementFactory.getRuntimeMXBean().getUptime();
+                stop();
+            }
+        }.start();
+        stage.show();
+        // stream the samples into the tree
+        pages.parseSamplesInBackground(
+            new Runnable() {
+                public void run() {
+                    expandTree();
+                    if (pendingPagePath != null && pages.getPage(pendingPagePath) != null) {
+                        String path = pendingPagePath;
+                        pendingPagePath = null;
+                        goToPage(path);
+                    }
+                }
+            },
+            new Runnable() {
+                public void run() {
+                    samplesLoaded = true;
+                    expandTree();
+                    // go to the page we were linked to if it is here now, else default to all samples. A docs page
+                    // stays pending until the docs are in.
+                    String path = pendingPagePath;
+                    pendingPagePath = null;
+                    if (path != null) goToPage(path);
+                    if (currentPage == null) goToPage(pages.getSamples());
+                    else if (currentPage == pages.getSamples()) reload();
+                    timeToInteractive = ManagementFactory.getRuntimeMXBean().getUptime();
+                    if (Boolean.getBoolean("ensemble.startup.metrics")) {
+                        System.out.println("Startup: first frame at " + timeToFirstFrame + " ms, interactive at "
+                                + timeToInteractive + " ms");
+                    }
+                    // fetch the docs once all samples are in so the two do not compete for the start up time
+                    proxyDialog.getDocsInBackground(true, new Runnable() {
+                        public void run() {
+                            docsLoaded = true;
+                            String path = pendingPagePath;
+                            pendingPagePath = null;
+                            if (path != null) goToPage(path);
+                        }
+                    });
+                }
+            });
+    }
+
+    /**
+     * Load one of the application's images in the background so it does not hold up showing the window
+     *
+     * @param name The image's path relative to this class
+     * @return The image, which may still be loading
+     */
+    private static Image loadImage(String name) {
+        return new Image(Ensemble2.class.getResource(name).toExternalForm(), true);
+    }
+
+    /**
+     * Expand the first two levels of the tree, apart from highlights and new
+     */
+    private void expandTree() {
         for (TreeItem child: pages.getRoot().getChildren()) {
             if (child == pages.getHighlighted() || child == pages.getNew()) continue;
             child.setExpanded(true);
@@ -388,22 +470,24 @@ public class Ensemble2 extends Application {
                 child2.setExpanded(true);
             }
         }
-        // goto initial page
-        if (isApplet) {
-            String hashLoc = getBrowserHashLocation();
-            if (hashLoc != null) {
-                goToPage(hashLoc);
-            } else {
-                // default to all samples
-                goToPage(pages.getSamples());
-            }
-        } else {
-            // default to all samples
-            goToPage(pages.getSamples());
-        }
-        // show stage
-        stage.setScene(scene);
-        stage.show();
+    }
+
+    /**
+     * Get the time from the JVM starting until the first frame of the application was shown
+     *
+     * @return Time in milliseconds, or -1 if the first frame has not been shown yet
+     */
+    public long getTimeToFirstFrame() {
+        return timeToFirstFrame;
+    }
+
+    /**
+     * Get the time from the JVM starting until all the samples were loaded and the first page shown
+     *
+     * @return Time in milliseconds, or -1 if still starting up
+     */
+    public long getTimeToInteractive() {
+        return timeToInteractive;
     }
     
     /**
@@ -543,7 +627,7 @@ public class Ensemble2 extends Application {
      * @param pagePath The path for the new page to show
      */
     public void goToPage(String pagePath) {
-        goToPage(pages.getPage(pagePath));
+        goToPage(pagePath, false);
     }
 
     /**
@@ -554,7 +638,10 @@ public class Ensemble2 extends Application {
      * @param force     Reload page even if its the current page
      */
     public void goToPage(String pagePath, boolean force) {
-        goToPage(pages.getPage(pagePath),true,force,true);
+        Page page = pages.getPage(pagePath);
+        // the page may not have been loaded yet, if so go to it once it is
+        pendingPagePath = (page == null && !(samplesLoaded && docsLoaded)) ? pagePath : null;
+        goToPage(page,true,force,true);
     }
 
     /**
@@ -577,6 +664,8 @@ public class Ensemble2 extends Application {
      */
     private void goToPage(Page page, boolean addHistory, boolean force, boolean swapViews) {
         if(page==null) return;
+        // the user has gone to a page, a deep link still waiting for the samples or docs to load is dropped
+        pendingPagePath = null;
         if(!force && page == currentPage) {
             return;
         }
@@ -37,20 +37,54 @@ import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.scene.Node;
 
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Page
- *
+ * <p>
+ * Each page caches its path, and the root of each tree of pages keeps an index of every page in the tree by path so
+ * {@link #getChild} is a hash lookup rather than a walk down the tree. The index is built the first time a page is
+ * looked up in the tree and kept up to date as pages are added, removed and renamed. When a page is moved the cached
+ * paths of it and the pages under it are cleared, and any index it had as a root is dropped.
  */
 public abstract class Page extends TreeItem<String> {
+    private String path;
+    private Map<String, Page> pathIndex; // only on the root of a tree, built on first lookup
 
     protected Page(String name) {
         super(name);
+        getChildren().addListener(new ListChangeListener<TreeItem<String>>() {
+            @Override public void onChanged(Change<? extends TreeItem<String>> change) {
+                Map<String, Page> index = getRootPage().pathIndex;
+                while (change.next()) {
+                    for (TreeItem<String> removed : change.getRemoved()) {
+                        if (index != null) unindex(index, (Page) removed);
+                        ((Page) removed).clearPaths();
+                    }
+                    for (TreeItem<String> added : change.getAddedSubList()) {
+                        Page page = (Page) added;
+                        page.pathIndex = null;
+                        page.clearPaths();
+                        if (index != null) index(index, page, childPath(getPath(), page.getName()));
+                    }
+                }
+            }
+        });
     }
 
     public void setName(String name){
+        Page root = getRootPage();
+        if (root.pathIndex != null) unindex(root.pathIndex, this);
         setValue(name);
+        clearPaths();
+        if (root == this) {
+            pathIndex = null;
+        } else if (root.pathIndex != null) {
+            index(root.pathIndex, this, getPath());
+        }
     }
 
     public String getName() {
@@ -58,50 +92,79 @@ public abstract class Page extends TreeItem<String> {
     }
 
     public String getPath() {
-        if (getParent() == null) {
-            return getName();
+        if (path == null) {
+            path = (getParent() == null) ? getName() : childPath(((Page)getParent()).getPath(), getName());
+        }
+        return path;
+    }
+
+    private static String childPath(String parentsPath, String name) {
+        if (parentsPath.equalsIgnoreCase("All")) {
+            return name;
         } else {
-            String parentsPath = ((Page)getParent()).getPath();
-            if (parentsPath.equalsIgnoreCase("All")) {
-                return getName();
-            } else {
-                return  parentsPath + "/" + getName();
-            }
+            return  parentsPath + "/" + name;
+        }
+    }
+
+    private Page getRootPage() {
+        Page page = this;
+        while (page.getParent() != null) page = (Page) page.getParent();
+        return page;
+    }
+
+    /** clear the cached path of this page and all pages under it */
+    private void clearPaths() {
+        if (path == null) return;
+        path = null;
+        for (TreeItem<String> child : getChildren()) ((Page) child).clearPaths();
+    }
+
+    /** add a page and all pages under it to an index, caching their paths */
+    private static void index(Map<String, Page> index, Page page, String path) {
+        page.path = path;
+        if (!index.containsKey(path)) index.put(path, page);
+        for (TreeItem<String> child : page.getChildren()) {
+            Page childPage = (Page) child;
+            index(index, childPage, childPath(path, childPage.getName()));
         }
     }
 
+    /** remove a page and all pages under it from an index, by the paths they were indexed with */
+    private static void unindex(Map<String, Page> index, Page page) {
+        if (page.path != null && index.get(page.path) == page) index.remove(page.path);
+        for (TreeItem<String> child : page.getChildren()) unindex(index, (Page) child);
+    }
+
     public abstract Node createView();
 
     /** find a child with a '/' deliminated path */
     public Page getChild(String path) {
 //        System.out.println("Page.getChild("+path+")");
 //        new Throwable().printStackTrace(System.out);
-        int firstIndex = path.indexOf('/');
-        String childName = (firstIndex==-1) ? path : path.substring(0,firstIndex);
         String anchor = null;
-        if (childName.indexOf('#') != -1) {
-            String[] parts = childName.split("#");
-//            System.out.println("childName = " + childName);
-            childName = parts[0];
-//            System.out.println("childName AFTER = " + childName);
-            anchor = (parts.length == 2) ? parts[1] : null;
-//            System.out.println("anchor = " + anchor);
-        }
-//        System.out.println("childName = " + childName);
-        for (TreeItem child : getChildren()) {
-            Page page = (Page)child;
-            if(page.getName().equals(childName)) {
-                if(firstIndex==-1) {
-                    if (page instanceof DocPage) {
-                        ((DocPage)page).setAnchor(anchor);
-                    }
-                    return page;
-                } else {
-                    return page.getChild(path.substring(firstIndex+1));
-                }
+        if (path.indexOf('#') != -1) {
+            // strip anchors from the path, only an anchor on the last part is kept
+            String[] parts = path.split("/", -1);
+            StringBuilder cleanPath = new StringBuilder(path.length());
+            for (int i = 0; i < parts.length; i++) {
+                String[] nameAndAnchor = parts[i].split("#");
+                if (i > 0) cleanPath.append('/');
+                if (nameAndAnchor.length > 0) cleanPath.append(nameAndAnchor[0]);
+                anchor = (nameAndAnchor.length == 2) ? nameAndAnchor[1] : null;
             }
+            path = cleanPath.toString();
+        }
+        Page root = getRootPage();
+        if (root.pathIndex == null) {
+            root.pathIndex = new HashMap<String, Page>();
+            index(root.pathIndex, root, root.getPath());
+        }
+        Page page = root.pathIndex.get(childPath(getPath(), path));
+        if (page == root) return null; // the root is indexed too but is nobody's child
+        if (page instanceof DocPage) {
+            ((DocPage)page).setAnchor(anchor);
         }
-        return null;
+        return page;
     }
 
     @Override public String toString() {
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble;
+
+import ensemble.pages.CategoryPage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import javafx.scene.control.TreeItem;
+
+/**
+ * Benchmark of looking up pages by path, with the path index in {@link Page} against walking down the tree comparing
+ * the names of children at each level as lookups used to. The doc pages are created the same way as when the docs are
+ * loaded, from a javadoc all classes page or from a generated one.
+ * <p>
+ * Options:
+ * <pre>
+ *   -docs file   javadoc allclasses-noframe.html to create the doc pages from
+ *   -classes n   number of classes in the generated all classes page, defaults to 5000
+ *   -passes n    number of times to look up every page, defaults to 20
+ * </pre>
+ */
+public class PagePathBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        File docsFile = null;
+        int classes = 5000;
+        int passes = 20;
+        for (int i = 0; i < args.length; i++) {
+            if ("-docs".equals(args[i]) && i + 1 < args.length) docsFile = new File(args[++i]);
+            else if ("-classes".equals(args[i]) && i + 1 < args.length) classes = Integer.parseInt(args[++i]);
+            else if ("-passes".equals(args[i]) && i + 1 < args.length) passes = Integer.parseInt(args[++i]);
+        }
+        String allClassesPage;
+        if (docsFile != null) {
+            Scanner scanner = new Scanner(docsFile, "UTF-8").useDelimiter("\\A");
+            allClassesPage = scanner.next();
+            scanner.close();
+        } else {
+            allClassesPage = generateAllClassesPage(classes);
+        }
+        Pages pages = new Pages();
+        long start = System.nanoTime();
+        DocsHelper.extractDocsPagesFromAllClassesPage((CategoryPage) pages.getDocs(), allClassesPage, "http://docs/");
+        long createNanos = System.nanoTime() - start;
+        List<Page> all = new ArrayList<Page>();
+        collect(pages.getRoot(), all);
+        List<String> paths = new ArrayList<String>(all.size());
+        for (Page page : all) paths.add(walkPath(page));
+        System.out.println(all.size() + " pages created in " + createNanos / 1000000 + " ms");
+        // first lookup builds the index
+        long memoryBefore = usedMemory();
+        start = System.nanoTime();
+        pages.getPage(paths.get(0));
+        long indexNanos = System.nanoTime() - start;
+        long indexBytes = usedMemory() - memoryBefore;
+        System.out.println("index built in " + indexNanos / 1000000 + " ms, about " + indexBytes / 1024 + " KB");
+        for (int i = 0; i < all.size(); i++) {
+            if (pages.getPage(paths.get(i)) != all.get(i) || !all.get(i).getPath().equals(paths.get(i))) {
+                throw new IllegalStateException("Wrong page for path [" + paths.get(i) + "]");
+            }
+        }
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up
+            start = System.nanoTime();
+            int found = 0;
+            for (int pass = 0; pass < passes; pass++) {
+                for (String path : paths) if (pages.getPage(path) != null) found++;
+            }
+            long indexedNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int pass = 0; pass < passes; pass++) {
+                for (String path : paths) if (walkChild(pages.getRoot(), path) != null) found++;
+            }
+            long walkNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            int length = 0;
+            for (int pass = 0; pass < passes; pass++) {
+                for (Page page : all) length += page.getPath().length();
+            }
+            long cachedPathNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int pass = 0; pass < passes; pass++) {
+                for (Page page : all) length += walkPath(page).length();
+            }
+            long walkPathNanos = System.nanoTime() - start;
+            if (round == 1) {
+                int lookups = passes * paths.size();
+                System.out.printf("getChild: index %.0f ns, tree walk %.0f ns per lookup%n",
+                        indexedNanos / (double) lookups, walkNanos / (double) lookups);
+                System.out.printf("getPath:  cached %.0f ns, rebuilt %.0f ns per page (%d, %d)%n",
+                        cachedPathNanos / (double) lookups, walkPathNanos / (double) lookups, found, length);
+            }
+        }
+    }
+
+    private static String generateAllClassesPage(int classes) {
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < classes; i++) {
+            page.append("<a href=\"javafx/module").append(i % 40).append("/package").append(i % 7)
+                    .append("/Class").append(i).append(".html\" title=\"class\">Class").append(i).append("</a><br>\n");
+        }
+        return page.toString();
+    }
+
+    private static void collect(Page page, List<Page> all) {
+        for (TreeItem<String> child : page.getChildren()) {
+            all.add((Page) child);
+            collect((Page) child, all);
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** find a child by walking down the tree, as getChild did before the path index */
+    private static Page walkChild(Page page, String path) {
+        int firstIndex = path.indexOf('/');
+        String childName = (firstIndex==-1) ? path : path.substring(0,firstIndex);
+        for (TreeItem<String> child : page.getChildren()) {
+            Page childPage = (Page)child;
+            if (childPage.getName().equals(childName)) {
+                return (firstIndex==-1) ? childPage : walkChild(childPage, path.substring(firstIndex+1));
+            }
+        }
+        return null;
+    }
+
+    /** build a path up to the root, as getPath did before paths were cached */
+    private static String walkPath(Page page) {
+        if (page.getParent() == null) return page.getName();
+        String parentsPath = walkPath((Page)page.getParent());
+        return parentsPath.equalsIgnoreCase("All") ? page.getName() : parentsPath + "/" + page.getName();
+    }
+}
@@ -34,10 +34,19 @@ package ensemble;
 import ensemble.pages.AllPagesPage;
 import ensemble.pages.CategoryPage;
 import ensemble.pages.SamplePage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javafx.application.Platform;
+import javafx.scene.control.TreeItem;
 
 /**
  * Pages
- *
+ * <p>
+ * At startup the samples are loaded with {@link #parseSamplesInBackground}, so the samples category starts out empty
+ * and fills in after the window is shown. Once they are in, the samples are also indexed by the API classes they
+ * reference, which is what the docs pages are linked to their related samples with.
  */
 public class Pages {
     public static final String SAMPLES = "SAMPLES";
@@ -49,6 +58,7 @@ public class Pages {
     private CategoryPage docs;
     private CategoryPage newSamples;
     private CategoryPage highlightedSamples;
+    private Map<String, List<SamplePage>> samplesByApiClass = Collections.emptyMap();
 
     public Pages() {
         // create all the pages
@@ -62,8 +72,55 @@ public class Pages {
         root.getChildren().add(docs);
     }
 
-    public void parseSamples(){
-        SampleHelper.getSamples(samples);
+    /**
+     * Find all the samples on a background thread, then add them to the samples category on the FX thread one top level
+     * category at a time, so the tree fills in while the application is already showing. The highlights and new
+     * categories are filled once all the samples are in.
+     *
+     * @param onCategoryAdded Run on the FX thread after each category is added, may be null
+     * @param onLoaded        Run on the FX thread once all the samples are in, may be null
+     */
+    public void parseSamplesInBackground(final Runnable onCategoryAdded, final Runnable onLoaded) {
+        Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                Map<String, List<SamplePage>> index = Collections.emptyMap();
+                boolean complete = false;
+                try {
+                    // build the sample tree detached from the scene, then hand its categories over to the FX thread
+                    CategoryPage loaded = new CategoryPage(SAMPLES);
+                    SampleHelper.getSamples(loaded);
+                    index = SampleHelper.indexSamplesByApiClass(loaded);
+                    final List<TreeItem<String>> categories = new ArrayList<TreeItem<String>>(loaded.getChildren());
+                    loaded.getChildren().clear();
+                    for (final TreeItem<String> category : categories) {
+                        Platform.runLater(new Runnable() {
+                            @Override public void run() {
+                                samples.getChildren().add(category);
+                                if (onCategoryAdded != null) onCategoryAdded.run();
+                            }
+                        });
+                    }
+                    complete = true;
+                } finally {
+                    // always finish loading, even if it failed part way, so the application does not wait forever
+                    final Map<String, List<SamplePage>> loadedIndex = index;
+                    final boolean allLoaded = complete;
+                    Platform.runLater(new Runnable() {
+                        @Override public void run() {
+                            samplesByApiClass = loadedIndex;
+                            // the highlights and new samples may be missing if loading failed
+                            if (allLoaded && !samples.getChildren().isEmpty()) addHighlightsAndNew();
+                            if (onLoaded != null) onLoaded.run();
+                        }
+                    });
+                }
+            }
+        }, "Ensemble Sample Loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void addHighlightsAndNew() {
         // ADD PAGES TO HIGHLIGHTS CATEGORY
         highlightedSamples.getChildren().addAll(
                 new SamplePage((SamplePage)getPage("SAMPLES/Web/Web View")),
@@ -92,6 +149,17 @@ public class Pages {
         );
     }
 
+    /**
+     * Get the samples that reference an API class
+     *
+     * @param className Fully qualified name of the class, eg "javafx.animation.Timeline"
+     * @return The samples in the order they are in the tree, empty if there are none or the samples are not loaded yet
+     */
+    public List<SamplePage> getSamplesUsingClass(String className) {
+        List<SamplePage> samplePages = samplesByApiClass.get(className);
+        return (samplePages == null) ? Collections.<SamplePage>emptyList() : Collections.unmodifiableList(samplePages);
+    }
+
     public Page getPage(String name) {
         Page page = root.getChild(name);
 //        if (page == null) {
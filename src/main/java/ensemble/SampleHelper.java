@@ -31,12 +31,15 @@
  */
 package ensemble;
 
+import ensemble.model.SampleCatalog;
+import ensemble.model.SampleInfo;
 import ensemble.pages.CategoryPage;
 import ensemble.pages.SamplePage;
 import java.io.BufferedReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -47,17 +50,28 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import javafx.application.ConditionalFeature;
 import javafx.application.Platform;
+import javafx.scene.control.TreeItem;
 
 /**
  * SampleHelper
- *
+ * <p>
+ * Sample pages are created from the {@link SampleCatalog} generated by the search index build when there is one that
+ * lists the same samples as "samplesAll.txt", otherwise each sample's source is found from "samplesAll.txt". The pages
+ * are added to the tree in the order of the list. Sources not covered by the catalog are parsed concurrently on a
+ * bounded pool of threads when the samples are indexed.
  */
 public class SampleHelper {
     private static final String SAMPLES_PACKAGE_ROOT = "ensemble/samples/";
+    private static final int MAX_PARSE_THREADS = 8;
 
     public static void getSamples(CategoryPage rootPage) {
         try {
@@ -65,6 +79,8 @@ public class SampleHelper {
             // filename associated with it.
             URL classUrl = SampleHelper.class.getResource("SampleHelper.class");
             String classUrlString = classUrl.toString();
+            // use the samples parsed at build time if they are the samples of this build
+            if (findAllSamplesInCatalog(rootPage)) return;
             // check if its a file or jar, handle each
             if (classUrlString.startsWith("file:")) {
                 File classFile = new File(classUrl.toURI());
@@ -86,6 +102,101 @@ public class SampleHelper {
         }
     }
 
+    /**
+     * Index the samples under a category by the fully qualified names of the API classes they reference with @see, each
+     * list in the order the samples are in the tree. The sources of samples not loaded from the catalog are parsed on a
+     * pool of threads first, samples whose source could not be read or parsed are left out.
+     *
+     * @param rootPage The page to index the samples under
+     * @return Map of class name to the samples that reference it
+     */
+    public static Map<String, List<SamplePage>> indexSamplesByApiClass(CategoryPage rootPage) {
+        List<SamplePage> samplePages = new ArrayList<SamplePage>();
+        findSamplePages(rootPage, samplePages);
+        parseAll(samplePages);
+        Map<String, List<SamplePage>> index = new HashMap<String, List<SamplePage>>();
+        for (SamplePage samplePage : samplePages) {
+            SampleInfo sampleInfo = samplePage.getSampleInfo();
+            if (sampleInfo == null) continue;
+            for (String apiClassPath : sampleInfo.getApiClasspaths()) {
+                List<SamplePage> samples = index.get(apiClassPath);
+                if (samples == null) {
+                    samples = new ArrayList<SamplePage>();
+                    index.put(apiClassPath, samples);
+                }
+                // a sample can reference the same class more than once
+                if (samples.isEmpty() || samples.get(samples.size() - 1) != samplePage) samples.add(samplePage);
+            }
+        }
+        return index;
+    }
+
+    private static void findSamplePages(CategoryPage dirPage, List<SamplePage> samplePages) {
+        for (TreeItem<String> child : dirPage.getChildren()) {
+            if (child instanceof SamplePage) {
+                samplePages.add((SamplePage) child);
+            } else {
+                findSamplePages((CategoryPage) child, samplePages);
+            }
+        }
+    }
+
+    /**
+     * Create the sample pages from the catalog generated at build time, without reading any sample sources. The
+     * catalog is only used if it lists the same samples as "samplesAll.txt", a catalog left over from an earlier build
+     * would be missing new samples and point at ones that are gone. Sources are loaded from next to the classes when
+     * they are packaged with them, as in a jar, otherwise from where they were when the catalog was built.
+     *
+     * @param dirPage The page to add the sample categories to
+     * @return false if there is no catalog to load from or it does not match the samples of this build
+     */
+    private static boolean findAllSamplesInCatalog(CategoryPage dirPage) {
+        InputStream samplesAll = SampleHelper.class.getResourceAsStream("samplesAll.txt");
+        if (samplesAll == null) return false;
+        List<String> samplePaths = new ArrayList<String>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(samplesAll));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int root = line.indexOf(SAMPLES_PACKAGE_ROOT);
+                    if (root != -1) samplePaths.add(line.substring(root + SAMPLES_PACKAGE_ROOT.length()));
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        InputStream in = SampleHelper.class.getResourceAsStream(SampleCatalog.RESOURCE_NAME);
+        if (in == null) return false;
+        String sourceRootUrl = null;
+        if (!samplePaths.isEmpty()) {
+            URL source = SampleHelper.class.getResource("samples/" + samplePaths.get(0));
+            if (source != null) {
+                String sourceUrl = source.toString();
+                sourceRootUrl = sourceUrl.substring(0, sourceUrl.length() - samplePaths.get(0).length());
+            }
+        }
+        List<String> paths = new ArrayList<String>();
+        List<SampleInfo> samples;
+        try {
+            samples = SampleCatalog.read(in, sourceRootUrl, paths);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        if (!paths.equals(samplePaths)) return false;
+        Map<String,CategoryPage> categoryPageMap = new HashMap<String, CategoryPage>();
+        for (int i = 0; i < samples.size(); i++) {
+            String path = paths.get(i);
+            CategoryPage parentCategoryPage = getCategoryPageForPath(path.substring(0, path.lastIndexOf('/')), dirPage, categoryPageMap);
+            parentCategoryPage.getChildren().add(new SamplePage(samples.get(i)));
+        }
+        return true;
+    }
+
     private static void findAllSamples(String jarFileUrl,CategoryPage dirPage) throws IOException, URISyntaxException {
         // create map for CategoryPages
         Map<String,CategoryPage> categoryPageMap = new HashMap<String, CategoryPage>();
@@ -187,6 +298,45 @@ public class SampleHelper {
         }
     }
 
+    /**
+     * Parse the sources of sample pages on a pool of threads rather than one sample after another, returning once they
+     * are all parsed. Pages that already have their info, as those from the catalog do, are skipped and no pool is
+     * started when there is nothing left to parse.
+     *
+     * @param samplePages The pages to parse the sources of
+     */
+    private static void parseAll(List<SamplePage> samplePages) {
+        List<SamplePage> unparsedPages = new ArrayList<SamplePage>();
+        for (SamplePage samplePage : samplePages) {
+            if (!samplePage.hasSampleInfo()) unparsedPages.add(samplePage);
+        }
+        if (unparsedPages.isEmpty()) return;
+        int threads = Math.min(unparsedPages.size(),
+                Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARSE_THREADS)));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Ensemble Sample Parser " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (final SamplePage samplePage : unparsedPages) {
+            executor.execute(new Runnable() {
+                @Override public void run() {
+                    samplePage.getSampleInfo();
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // any sources not parsed yet are parsed by whoever needs them next
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static void findAllSamples(File dir,CategoryPage dirPage) {
         for (File child:dir.listFiles()) {
             String name = child.getName();
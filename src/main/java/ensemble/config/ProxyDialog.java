@@ -35,6 +35,7 @@ import ensemble.DocsHelper;
 import ensemble.Ensemble2;
 import ensemble.Pages;
 import ensemble.pages.CategoryPage;
+import ensemble.search.LocalDocsIndexer;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -188,9 +189,6 @@ public class ProxyDialog extends VBox {
                             (CategoryPage)Ensemble2.getEnsemble2().getPages().getDocs(),
                             task.getValue(), 
                             Ensemble2.getEnsemble2().getDocsUrl());
-                    // update docs pages cross links to samples
-                    DocsHelper.syncDocPagesAndSamplePages(
-                            (CategoryPage)Ensemble2.getEnsemble2().getPages().getSamples());
                     if (callBackOnSuccess != null) callBackOnSuccess.run();
                 } else if (newState == Worker.State.FAILED) {
                     if (showProxyDialogOnFail) {
@@ -239,10 +237,14 @@ public class ProxyDialog extends VBox {
             }
         }
         Ensemble2.getEnsemble2().setDocsUrl(Ensemble2.DEFAULT_DOCS_URL);
+        // online docs match the bundled search index
+        LocalDocsIndexer.watch(null);
     }
 
     public void retrieveLocalDocs(String docUrl) {
         Ensemble2.getEnsemble2().setDocsUrl(docUrl);
+        // index the local docs in the background so search results match them
+        LocalDocsIndexer.watch(docUrl);
     }
 
     private class ProxyPanel extends GridPane {
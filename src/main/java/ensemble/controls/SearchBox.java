@@ -33,8 +33,9 @@ package ensemble.controls;
 
 import ensemble.Ensemble2;
 import ensemble.search.DocumentType;
-import ensemble.search.IndexSearcher;
 import ensemble.search.SearchResult;
+import ensemble.search.SearchService;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import javafx.animation.KeyFrame;
@@ -43,6 +44,7 @@ import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Point2D;
@@ -60,19 +62,22 @@ import javafx.util.Duration;
 import org.apache.lucene.queryParser.ParseException;
 
 /**
- * A mac style search box with drop down with results
+ * A mac style search box with drop down with results. The rows of the drop down are pooled and rebound to the
+ * results of each query, so typing does not create new nodes once there are enough rows for the longest results.
  */
 public class SearchBox extends Region {
     private TextField textBox;
     private Button clearButton;
-    private IndexSearcher indexSearcher;
-    private ContextMenu contextMenu = new ContextMenu();
+    private SearchService searchService = new SearchService();
+    ContextMenu contextMenu = new ContextMenu(); // package private for SearchBoxTest
     private Popup extraInfoPopup = new Popup();
     private Label infoName;
     private Label infoDescription;
     private VBox infoBox;
     private Tooltip searchErrorTooltip = new Tooltip();
     private Timeline searchErrorTooltipHidder = null;
+    // menu rows reused for every set of results, the menu only grows when there are more results than rows
+    private final List<ResultRow> resultRows = new ArrayList<ResultRow>();
 
     public SearchBox() {
         setId("SearchBox");
@@ -102,36 +107,48 @@ public class SearchBox extends Region {
             @Override public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
                 clearButton.setVisible(textBox.getText().length() != 0);
                 if (textBox.getText().length() == 0) {
+                    searchService.cancelSearch();
                     if (contextMenu != null) contextMenu.hide();
                     showError(null);
                 } else {
-                    boolean haveResults = false;
-                    Map<DocumentType, List<SearchResult>> results = null;
-                    try {
-                        if (indexSearcher == null) indexSearcher = new IndexSearcher();
-                        results = indexSearcher.search(
-                                textBox.getText() + (textBox.getText().matches("\\w+") ? "*" : "")
-                        );
-                        // check if we have any results
-                        for (List<SearchResult> categoryResults: results.values()) {
-                            if (categoryResults.size() > 0) {
-                                haveResults = true;
-                                break;
-                            }
-                        }
-                    } catch (ParseException e) {
-                        showError(e.getMessage().substring("Cannot parse ".length()));
-                    }
-                    if (haveResults) {
-                        showError(null);
-                        populateMenu(results);
-                        if (!contextMenu.isShowing()) contextMenu.show(SearchBox.this, Side.BOTTOM, 10,-5);
-                    } else {
-                        if (searchErrorTooltip.getText() == null) showError("No matches");
-                        contextMenu.hide();
+                    searchService.search(textBox.getText());
+                }
+            }
+        });
+        // results are published on the FX thread once the latest query completes
+        searchService.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
+            @Override public void handle(WorkerStateEvent event) {
+                // ignore a result that completed just as the text was cleared
+                if (textBox.getText().length() == 0) return;
+                Map<DocumentType, List<SearchResult>> results = searchService.getValue();
+                boolean haveResults = false;
+                // check if we have any results
+                for (List<SearchResult> categoryResults: results.values()) {
+                    if (categoryResults.size() > 0) {
+                        haveResults = true;
+                        break;
                     }
-                    contextMenu.setFocused(true);
                 }
+                if (haveResults) {
+                    showError(null);
+                    populateMenu(results);
+                    if (!contextMenu.isShowing()) contextMenu.show(SearchBox.this, Side.BOTTOM, 10,-5);
+                } else {
+                    if (searchErrorTooltip.getText() == null) showError("No matches");
+                    contextMenu.hide();
+                }
+                contextMenu.setFocused(true);
+            }
+        });
+        searchService.setOnFailed(new EventHandler<WorkerStateEvent>() {
+            @Override public void handle(WorkerStateEvent event) {
+                Throwable e = searchService.getException();
+                if (e instanceof ParseException) {
+                    showError(e.getMessage().substring("Cannot parse ".length()));
+                } else {
+                    e.printStackTrace();
+                }
+                contextMenu.hide();
             }
         });
         // create info popup
@@ -183,69 +200,111 @@ public class SearchBox extends Region {
         }
     }
 
-    private void populateMenu(Map<DocumentType, List<SearchResult>> results) {
-        contextMenu.getItems().clear();
+    /**
+     * Show a new set of results in the menu, reusing the rows of the previous results. Package private for
+     * SearchBoxTest.
+     */
+    void populateMenu(Map<DocumentType, List<SearchResult>> results) {
+        int used = 0;
         for (Map.Entry<DocumentType, List<SearchResult>> entry : results.entrySet()) {
             boolean first = true;
             for(SearchResult result: entry.getValue()) {
-                final SearchResult sr = result;
-                final HBox hBox = new HBox();
-                hBox.setFillHeight(true);
-                Label itemLabel = new Label(result.getName());
-                itemLabel.getStyleClass().add("item-label");
-                if (first) {
-                    first = false;
-                    Label groupLabel = new Label(result.getDocumentType().getPluralDisplayName());
-                    groupLabel.getStyleClass().add("group-label");
-                    groupLabel.setAlignment(Pos.CENTER_RIGHT);
-                    groupLabel.setMinWidth(USE_PREF_SIZE);
-                    groupLabel.setPrefWidth(70);
-                    hBox.getChildren().addAll(groupLabel,itemLabel);
-                } else {
-                    Region spacer = new Region();
-                    spacer.setMinWidth(USE_PREF_SIZE);
-                    spacer.setPrefWidth(70);
-                    hBox.getChildren().addAll(spacer,itemLabel);
+                if (used == resultRows.size()) {
+                    ResultRow row = new ResultRow();
+                    resultRows.add(row);
+                    contextMenu.getItems().add(row.menuItem);
                 }
-                // create a special node for hiding/showing popup content
-                final Region popRegion = new Region();
-                popRegion.getStyleClass().add("search-menu-item-popup-region");
-                popRegion.setPrefSize(10, 10);
-                hBox.getChildren().add(popRegion);
-                final String name = (result.getDocumentType() == DocumentType.SAMPLE) ? result.getName() :
-                        result.getPackageName()+
-                                ((result.getClassName() != null) ? "."+result.getClassName() : "") +
-                                ((result.getName() != null) ? "."+result.getName() : "");
-                final String shortDescription = (result.getShortDescription().length() == 160) ? result.getShortDescription() +"..." : result.getShortDescription();
-                popRegion.opacityProperty().addListener(new ChangeListener<Number>() {
-                    @Override public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue) {
-                        Platform.runLater( new Runnable() { // TODO runLater used here as a workaround for RT-14396
-                            @Override public void run() {
-                                if (popRegion.getOpacity() == 1) {
-                                    infoName.setText(name);
-                                    infoDescription.setText(shortDescription);
-                                    Point2D hBoxPos = hBox.localToScene(0, 0);
-                                    extraInfoPopup.show(getScene().getWindow(),
-                                        hBoxPos.getX() + contextMenu.getScene().getX() + contextMenu.getX() - infoBox.getPrefWidth() - 10,
-                                        hBoxPos.getY() + contextMenu.getScene().getY() + contextMenu.getY() - 27
-                                    );
-                                }
+                resultRows.get(used++).bind(result, first);
+                first = false;
+            }
+        }
+        // hide the rows left over from longer result lists, they are kept for reuse
+        for (int i = used; i < resultRows.size(); i++) resultRows.get(i).unbind();
+    }
+
+    /**
+     * A row of the results menu. Rows are created once and then rebound to each new set of results.
+     */
+    private class ResultRow {
+        private final HBox hBox = new HBox();
+        private final Label groupLabel = new Label();
+        private final Label itemLabel = new Label();
+        private final Region popRegion = new Region();
+        private final CustomMenuItem menuItem = new CustomMenuItem(hBox, true);
+        private SearchResult result;
+        private String name;
+        private String shortDescription;
+
+        private ResultRow() {
+            hBox.setFillHeight(true);
+            itemLabel.getStyleClass().add("item-label");
+            groupLabel.getStyleClass().add("group-label");
+            groupLabel.setAlignment(Pos.CENTER_RIGHT);
+            groupLabel.setMinWidth(USE_PREF_SIZE);
+            groupLabel.setPrefWidth(70);
+            // create a special node for hiding/showing popup content
+            popRegion.getStyleClass().add("search-menu-item-popup-region");
+            popRegion.setPrefSize(10, 10);
+            hBox.getChildren().addAll(groupLabel, itemLabel, popRegion);
+            popRegion.opacityProperty().addListener(new ChangeListener<Number>() {
+                @Override public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue) {
+                    Platform.runLater( new Runnable() { // TODO runLater used here as a workaround for RT-14396
+                        @Override public void run() {
+                            if (result != null && popRegion.getOpacity() == 1) {
+                                infoName.setText(name);
+                                infoDescription.setText(shortDescription);
+                                Point2D hBoxPos = hBox.localToScene(0, 0);
+                                extraInfoPopup.show(getScene().getWindow(),
+                                    hBoxPos.getX() + contextMenu.getScene().getX() + contextMenu.getX() - infoBox.getPrefWidth() - 10,
+                                    hBoxPos.getY() + contextMenu.getScene().getY() + contextMenu.getY() - 27
+                                );
                             }
-                        });
-                    }
-                });
-                // create menu item
-                CustomMenuItem menuItem = new CustomMenuItem(hBox, true);
-                menuItem.getStyleClass().add("search-menu-item");
-                contextMenu.getItems().add(menuItem);
-                // handle item selection
-                menuItem.setOnAction(new EventHandler<ActionEvent>() {
-                    @Override public void handle(ActionEvent actionEvent) {
-                        ///System.out.println("SearchBox.handle menuItem.setOnAction");
-                        Ensemble2.getEnsemble2().goToPage(sr.getEnsemblePath(),true);
+                        }
+                    });
+                }
+            });
+            menuItem.getStyleClass().add("search-menu-item");
+            // handle item selection
+            menuItem.setOnAction(new EventHandler<ActionEvent>() {
+                @Override public void handle(ActionEvent actionEvent) {
+                    ///System.out.println("SearchBox.handle menuItem.setOnAction");
+                    if (result == null) return;
+                    // pages of other javadoc versions are not part of the bundled docs, open them in the browser
+                    if (result.getVersion() != null) {
+                        Ensemble2.getEnsemble2().getHostServices().showDocument(result.getUrl());
+                    } else {
+                        Ensemble2.getEnsemble2().goToPage(result.getEnsemblePath(),true);
                     }
-                });
-            }
+                }
+            });
+        }
+
+        /**
+         * Show a result in this row
+         *
+         * @param result The result to show
+         * @param first  True if this is the first row of the result's document type
+         */
+        private void bind(SearchResult result, boolean first) {
+            this.result = result;
+            itemLabel.setText(result.getVersion() == null ? result.getName() :
+                    result.getName() + " (" + result.getVersion() + ")");
+            // rows after the first of a type keep the label blank as a spacer of the same width
+            groupLabel.setText(first ? result.getDocumentType().getPluralDisplayName() : null);
+            name = (result.getDocumentType() == DocumentType.SAMPLE) ? result.getName() :
+                    result.getPackageName()+
+                            ((result.getClassName() != null) ? "."+result.getClassName() : "") +
+                            ((result.getName() != null) ? "."+result.getName() : "");
+            shortDescription = (result.getShortDescription().length() == 160) ? result.getShortDescription() +"..." : result.getShortDescription();
+            menuItem.setVisible(true);
+        }
+
+        /**
+         * Hide this row until it is needed again
+         */
+        private void unbind() {
+            result = null;
+            menuItem.setVisible(false);
         }
     }
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the catalog of all samples, generated when the search index is built so that at startup the sample
+ * pages can be created without reading or parsing any sample source. It is the "samples.catalog" resource next to
+ * {@link ensemble.SampleHelper}.
+ * <p>
+ * Format, all numbers big endian:
+ * <pre>
+ *   int    MAGIC
+ *   int    VERSION
+ *   int    number of samples
+ *   per sample, in the order the samples were found:
+ *     UTF  path of the source relative to the samples root, eg. "controls/button/ColorButtonSample.java"
+ *     UTF  source file url at build time
+ *     UTF  name
+ *     UTF  package name
+ *     UTF  class name
+ *     UTF  ensemble path
+ *     UTF  description
+ *     then each of the api classpaths, related sample paths and resource urls as:
+ *       int  count
+ *       UTF  each value
+ * </pre>
+ */
+public class SampleCatalog {
+    public static final String RESOURCE_NAME = "samples.catalog";
+    private static final int MAGIC = 0x454E5343; // "ENSC"
+    private static final int VERSION = 1;
+
+    /**
+     * Write the catalog
+     *
+     * @param samples     The samples in the order they should appear
+     * @param paths       Path of each sample's source relative to the samples root, in the same order
+     * @param catalogFile The file to write the catalog to
+     */
+    public static void write(List<SampleInfo> samples, List<String> paths, File catalogFile) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(catalogFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(samples.size());
+            for (int i = 0; i < samples.size(); i++) {
+                SampleInfo sample = samples.get(i);
+                out.writeUTF(paths.get(i));
+                out.writeUTF(sample.getSourceFileUrl());
+                out.writeUTF(sample.getName());
+                out.writeUTF(sample.getPackageName());
+                out.writeUTF(sample.getClassName());
+                out.writeUTF(sample.getEnsemblePath());
+                out.writeUTF(sample.getDescription());
+                writeStrings(out, sample.getApiClasspaths());
+                writeStrings(out, sample.getRelatesSamplePaths());
+                writeStrings(out, sample.getResourceUrls());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+        out.writeInt(strings.length);
+        for (String string : strings) out.writeUTF(string);
+    }
+
+    /**
+     * Read the catalog
+     *
+     * @param in            Stream of the catalog, closed when done
+     * @param sourceRootUrl Url of the samples root the sources are loaded from at runtime, or null to use the urls
+     *                      the sources had at build time
+     * @param paths         Filled with the path of each sample's source relative to the samples root
+     * @return The samples in catalog order
+     * @throws IOException If the catalog could not be read or is from a different version
+     */
+    public static List<SampleInfo> read(InputStream in, String sourceRootUrl, List<String> paths) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64*1024));
+        try {
+            if (data.readInt() != MAGIC) throw new IOException("Not a sample catalog");
+            int version = data.readInt();
+            if (version != VERSION) throw new IOException("Unsupported sample catalog version [" + version + "]");
+            int count = data.readInt();
+            List<SampleInfo> samples = new ArrayList<SampleInfo>(count);
+            for (int i = 0; i < count; i++) {
+                String path = data.readUTF();
+                String sourceFileUrl = data.readUTF();
+                if (sourceRootUrl != null) sourceFileUrl = sourceRootUrl + path;
+                samples.add(new SampleInfo(sourceFileUrl, data.readUTF(), data.readUTF(), data.readUTF(),
+                        data.readUTF(), data.readUTF(), readStrings(data), readStrings(data), readStrings(data)));
+                paths.add(path);
+            }
+            return samples;
+        } finally {
+            data.close();
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) strings[i] = in.readUTF();
+        return strings;
+    }
+}
@@ -108,6 +108,22 @@ public class SampleInfo {
         resourceUrls = resourceList.toArray(new String[resourceList.size()]);
     }
 
+    /**
+     * Create from the values read from a {@link SampleCatalog}
+     */
+    SampleInfo(String sourceFileUrl, String name, String packageName, String className, String ensemblePath,
+               String description, String[] apiClasspaths, String[] relatesSamplePaths, String[] resourceUrls) {
+        this.sourceFileUrl = sourceFileUrl;
+        this.name = name;
+        this.packageName = packageName;
+        this.className = className;
+        this.ensemblePath = ensemblePath;
+        this.description = description;
+        this.apiClasspaths = apiClasspaths;
+        this.relatesSamplePaths = relatesSamplePaths;
+        this.resourceUrls = resourceUrls;
+    }
+
     public String getName() {
         return name;
     }
@@ -116,6 +132,10 @@ public class SampleInfo {
         return sourceFileUrl;
     }
 
+    public String getPackageName() {
+        return packageName;
+    }
+
     public String getEnsemblePath() {
         return ensemblePath;
     }
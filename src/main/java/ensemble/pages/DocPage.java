@@ -34,10 +34,11 @@ package ensemble.pages;
 import ensemble.DocsHelper;
 import ensemble.Ensemble2;
 import ensemble.Page;
+import ensemble.Pages;
+import java.util.Collections;
+import java.util.List;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
@@ -56,7 +57,6 @@ public class DocPage extends Page {
     private static final String WEB_VIEW_WINDOW_CORNER_STYLECLASS =  "web-view-window-corner";
     private static DocPane docPane;
     private String docUrl;
-    private ObservableList<SamplePage> relatedSamples = FXCollections.observableArrayList();
     private String anchor;
 
     public DocPage(String className, String docUrl) {
@@ -64,7 +64,18 @@ public class DocPage extends Page {
         this.docUrl = docUrl;
     }
 
-    public ObservableList<SamplePage> getRelatedSamples() { return relatedSamples; }
+    /**
+     * Get the samples that reference the class this page documents, from the samples indexed by API class so they are
+     * there whenever the docs and samples are loaded
+     *
+     * @return The related samples, empty for package pages or until the samples are loaded
+     */
+    public List<SamplePage> getRelatedSamples() {
+        String path = getPath();
+        if (!path.startsWith(Pages.API_DOCS + '/')) return Collections.emptyList();
+        String className = path.substring(Pages.API_DOCS.length() + 1).replace('/', '.');
+        return Ensemble2.getEnsemble2().getPages().getSamplesUsingClass(className);
+    }
     public String getDocUrl() {
         if (anchor != null) {
             String url = docUrl + '#' + anchor;
@@ -227,7 +238,7 @@ public class DocPage extends Page {
 
         private void updateSidebar() {
             if (docPage != null) {
-                ObservableList<SamplePage> relatedSamples = docPage.getRelatedSamples();
+                List<SamplePage> relatedSamples = docPage.getRelatedSamples();
                 if (!(relatedSamples.isEmpty())) {
                     sidePane.setContent(createSideBar(relatedSamples));
                     sidePane.setVisible(true);
@@ -245,7 +256,7 @@ public class DocPage extends Page {
             requestLayout();
         }
 
-        private Node createSideBar(ObservableList<SamplePage> relatedSamples) {
+        private Node createSideBar(List<SamplePage> relatedSamples) {
             GridPane sidebar = new GridPane() {
                 // stretch to allways fill height of scrollpane
                 @Override protected double computePrefHeight(double width) {
@@ -76,69 +76,70 @@ import javafx.scene.text.TextAlignment;
 
 /**
  * SamplePage
+ * <p>
+ * Pages for every sample are created at startup, so creating one only records where its source is, or takes sample info
+ * already parsed at build time. The source is read and parsed the first time the sample info is asked for and the
+ * sample class is loaded the first time the page or its tile is shown. Doc pages find the samples that link back to
+ * them with {@link ensemble.Pages#getSamplesUsingClass}.
  */
 public class SamplePage extends Page {
     private static WebEngine engine = null;
     private static WebView webView = null;
-    private SampleInfo sampleInfo;
-    private Class sampleClass;
+    private final SampleSource sampleSource;
     private String rawCode;
     private String htmlCode;
 
+    /**
+     * Create a page for a sample, this is cheap as nothing is loaded until the sample is first needed
+     *
+     * @param name          The page name
+     * @param sourceFileUrl Url of the sample's .java source
+     */
     public SamplePage(String name, String sourceFileUrl) throws IllegalArgumentException {
         super(name);
-        String unqualifiedClassName = sourceFileUrl.substring(sourceFileUrl.lastIndexOf('/')+1,
-                sourceFileUrl.length()-5);
-        try {
-            // load src into String
-            StringBuilder builder = new StringBuilder();
-            URI uri = new URI(sourceFileUrl);
-            InputStream in = uri.toURL().openStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-            String line;
-            while((line = reader.readLine()) != null) {
-                builder.append(line);
-                builder.append('\n');
-            }
-            reader.close();
-            // parse sample info
-            sampleInfo = new SampleInfo(sourceFileUrl, unqualifiedClassName, builder.toString());
-            // load class
-            sampleClass = getClass().getClassLoader().loadClass(sampleInfo.getClassName());
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-        } catch (URISyntaxException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        // Add API back references
-        Ensemble2 ensemble2 = Ensemble2.getEnsemble2();
-        for (String apiClassPath : sampleInfo.getApiClasspaths()) {
-            String path = Pages.API_DOCS+'/'+apiClassPath.replace('.','/');
-            DocPage docPage = (DocPage) ensemble2.getPages().getPage(path);
-            if (docPage != null) {
-                docPage.getRelatedSamples().add(this);
-//            } else {
-//                System.err.println("Failed to find documentation page for classpath ["+apiClassPath+"] from @see in sample ["+sourceFileUrl+"]");
-            }
-        }
+        sampleSource = new SampleSource(sourceFileUrl);
+    }
+
+    /**
+     * Create a page for a sample whose info has already been parsed, such as one from the
+     * {@link ensemble.model.SampleCatalog}. Only the sample class is left to load when the page is first shown.
+     *
+     * @param sampleInfo The sample's info
+     */
+    public SamplePage(SampleInfo sampleInfo) {
+        super(sampleInfo.getName());
+        sampleSource = new SampleSource(sampleInfo.getSourceFileUrl());
+        sampleSource.sampleInfo = sampleInfo;
     }
 
     public SamplePage(SamplePage pageToClone) {
         super(pageToClone.getName());
-        this.sampleInfo = pageToClone.sampleInfo;
-        this.sampleClass = pageToClone.sampleClass;
+        this.sampleSource = pageToClone.sampleSource;
     }
 
+    /**
+     * Get the info parsed from the sample's source, reading and parsing it the first time
+     */
     public SampleInfo getSampleInfo() {
-        return sampleInfo;
+        return sampleSource.getSampleInfo();
+    }
+
+    /**
+     * Check if the sample's info is already available, either from the catalog or from an earlier parse
+     */
+    public boolean hasSampleInfo() {
+        return sampleSource.hasSampleInfo();
+    }
+
+    private Class<?> getSampleClass() {
+        return sampleSource.getSampleClass();
     }
 
     @Override public Node createView() {
         // check if 3d sample and on supported platform
         //System.out.println("sampleClass.getSuperclass() == Sample3D.class = " + (sampleClass.getSuperclass() == Sample3D.class));
         //System.out.println("Platform.isSupported(ConditionalFeature.SCENE3D) = " + Platform.isSupported(ConditionalFeature.SCENE3D));
+        Class<?> sampleClass = getSampleClass();
         if (sampleClass.getSuperclass() == Sample3D.class && !Platform.isSupported(ConditionalFeature.SCENE3D)) {
             Label error =  new Label("JavaFX 3D is currently not supported on your configuration.");
             error.setStyle("-fx-text-fill: orangered; -fx-font-size: 1.4em;");
@@ -188,7 +189,7 @@ public class SamplePage extends Page {
                     fileChooser.setTitle("Save Netbeans Project As:");
                     fileChooser.setInitialDirectory(initialDir);
                     File result = fileChooser.showSaveDialog(saveProjectButton.getScene().getWindow());
-                    if (result != null) SampleProjectBuilder.createSampleProject(result, sampleInfo.getSourceFileUrl(), sampleInfo.getResourceUrls());
+                    if (result != null) SampleProjectBuilder.createSampleProject(result, getSampleInfo().getSourceFileUrl(), getSampleInfo().getResourceUrls());
                 }
             });
             Button copyCodeButton = new Button("Copy Source");
@@ -244,6 +245,7 @@ public class SamplePage extends Page {
     }
 
     private Node createSideBar(Sample sample) {
+        SampleInfo sampleInfo = getSampleInfo();
         GridPane sidebar = new GridPane();
         sidebar.getStyleClass().add("right-sidebar");
         sidebar.setMaxWidth(Double.MAX_VALUE);
@@ -333,6 +335,7 @@ public class SamplePage extends Page {
     }
 
     private Node getIcon() {
+        Class<?> sampleClass = getSampleClass();
         URL url = sampleClass.getResource(sampleClass.getSimpleName()+".png");
         if (url != null) {
             ImageView imageView = new ImageView(new Image(url.toString()));
@@ -366,6 +369,7 @@ public class SamplePage extends Page {
 
     public Node createIconContent() {
         try {
+            Class<?> sampleClass = getSampleClass();
             Method createIconContent = sampleClass.getDeclaredMethod("createIconContent");
             return (Node)createIconContent.invoke(sampleClass);
         } catch (NoSuchMethodException e) {
@@ -415,7 +419,7 @@ public class SamplePage extends Page {
         if (shCoreDefaultCss == null) shCoreDefaultCss =
                 Utils.loadFile(Ensemble2.class.getResource("syntaxhighlighter/shCoreDefault.css")).replaceAll("!important","");
         // load and convert source
-        String source = SampleProjectBuilder.loadAndConvertSampleCode(sampleInfo.getSourceFileUrl());
+        String source = SampleProjectBuilder.loadAndConvertSampleCode(getSampleInfo().getSourceFileUrl());
         // store raw code
         rawCode = source;
         // escape < & >
@@ -466,6 +470,74 @@ public class SamplePage extends Page {
         htmlCode = html.toString();
     }
 
+    /**
+     * Where a sample's source is, plus the sample info and class which are loaded from it the first time they are
+     * needed. Copies of the page in the highlights and new categories share their original's source so a sample is
+     * only ever loaded once.
+     */
+    private static class SampleSource {
+        private final String sourceFileUrl;
+        private SampleInfo sampleInfo;
+        private Class<?> sampleClass;
+        private boolean parsed;
+        private boolean classLoaded;
+
+        private SampleSource(String sourceFileUrl) {
+            this.sourceFileUrl = sourceFileUrl;
+        }
+
+        private synchronized SampleInfo getSampleInfo() {
+            if (!parsed) {
+                parsed = true;
+                if (sampleInfo == null) sampleInfo = parse();
+            }
+            return sampleInfo;
+        }
+
+        private synchronized boolean hasSampleInfo() {
+            return parsed || sampleInfo != null;
+        }
+
+        private synchronized Class<?> getSampleClass() {
+            if (!classLoaded) {
+                classLoaded = true;
+                SampleInfo info = getSampleInfo();
+                try {
+                    // load class
+                    if (info != null) sampleClass = SamplePage.class.getClassLoader().loadClass(info.getClassName());
+                } catch (ClassNotFoundException e) {
+                    e.printStackTrace();
+                }
+            }
+            return sampleClass;
+        }
+
+        private SampleInfo parse() {
+            String unqualifiedClassName = sourceFileUrl.substring(sourceFileUrl.lastIndexOf('/')+1,
+                    sourceFileUrl.length()-5);
+            try {
+                // load src into String
+                StringBuilder builder = new StringBuilder();
+                URI uri = new URI(sourceFileUrl);
+                InputStream in = uri.toURL().openStream();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+                String line;
+                while((line = reader.readLine()) != null) {
+                    builder.append(line);
+                    builder.append('\n');
+                }
+                reader.close();
+                // parse sample info
+                return new SampleInfo(sourceFileUrl, unqualifiedClassName, builder.toString());
+            } catch (URISyntaxException e) {
+                e.printStackTrace();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+    }
+
     public static class SamplePageView extends TabPane {
         private Sample sample;
 
@@ -32,81 +32,396 @@
 package ensemble.search;
 
 import ensemble.DocsHelper;
+import ensemble.model.SampleCatalog;
 import ensemble.model.SampleInfo;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
 import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Generate the lucene index that Ensemble uses for its search
+ * Generate the lucene index that Ensemble uses for its search. The index is built in a working directory and then
+ * packed into a single {@link IndexBundle} resource.
+ * <p>
+ * The list of sample sources and a {@link SampleCatalog} of the samples parsed from them are also written, for creating
+ * the sample pages at startup.
+ * <p>
+ * Builds are incremental, a manifest of the content hash of every sample source and javadoc page indexed is kept next
+ * to the working index. Only the documents of files that were added, changed or removed since the last build are
+ * deleted and re-added, and if nothing has changed the index is left as it is.
+ * <p>
+ * Javadoc class pages are read and parsed in parallel, the resulting documents are added to the index in the order
+ * of the all classes page so the index is the same whatever the number of threads.
+ * <p>
+ * Options:
+ * <pre>
+ *   -full       ignore the manifest and rebuild the whole index
+ *   -threads n  number of threads to parse javadoc pages with, defaults to the number of processors
+ *   -benchmark  compare the javadoc extractor with the regex one, then parse all samples and javadoc pages with
+ *               1, 2, 4 ... n threads and print the time taken for each
+ *   -compress   deflate the blocks of the index bundle, only worth it when the bundle is not going into a jar which
+ *               compresses it anyway
+ *   -version v  build the index of another javadoc version instead, it holds only the javadoc of that version and is
+ *               bundled as "index-v.bundle" and listed in "index-versions.txt" for {@link FederatedSearcher}
+ *   -docs dir   javadoc directory to index, needed with -version
+ *   -samples dir  directory of the sample sources, defaults to "src/ensemble/samples"
+ *   -classes dir  compiled classes directory the bundle, sample list and catalog are written into, defaults to
+ *                 "build/classes"
+ *   -url url    url the javadoc of the version is published at, listed with the version so its search results link
+ *               there, defaults to the url of the -docs directory
+ * </pre>
  */
 public class BuildEnsembleSearchIndex {
+    /**
+     * Version of the documents written to the index, change it whenever the fields or analysis change so that the next
+     * incremental build starts again from scratch
+     */
+    private static final String INDEX_FORMAT = "6";
+    private static final String INDEX_FORMAT_KEY = "indexFormat";
+    /**
+     * Not stored field holding the manifest key of the file a document was created from
+     */
+    static final String SOURCE_FILE = "sourceFile";
+    static final String DOCS_BASE_URL = "http://download.oracle.com/javafx/2.0/api/";
+    private static final AtomicInteger documentsAdded = new AtomicInteger();
 
     public static void main(String[] args) throws Exception{
-        File samplesFilesDir = new File("build/classes/ensemble/");
-        File indexDir = new File("build/classes/ensemble/search/index");
+        boolean compress = false;
+        boolean full = false;
+        boolean benchmark = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String docsVersion = null;
+        String docsUrl = null;
         File docDir = new File("../../../artifacts/sdk/docs/api");
         File samplesDir = new File("src/ensemble/samples");
-        // create index
-        ///System.out.println("Indexing to directory '" + indexDir + "'...");
+        File classesDir = new File("build/classes");
+        for (int i = 0; i < args.length; i++) {
+            if ("-compress".equals(args[i])) compress = true;
+            else if ("-full".equals(args[i])) full = true;
+            else if ("-benchmark".equals(args[i])) benchmark = full = true;
+            else if ("-threads".equals(args[i]) && i + 1 < args.length) threads = Math.max(1, Integer.parseInt(args[++i]));
+            else if ("-version".equals(args[i]) && i + 1 < args.length) docsVersion = args[++i];
+            else if ("-docs".equals(args[i]) && i + 1 < args.length) docDir = new File(args[++i]);
+            else if ("-url".equals(args[i]) && i + 1 < args.length) docsUrl = args[++i];
+            else if ("-samples".equals(args[i]) && i + 1 < args.length) samplesDir = new File(args[++i]);
+            else if ("-classes".equals(args[i]) && i + 1 < args.length) classesDir = new File(args[++i]);
+        }
+        String indexName = docsVersion == null ? "search-index" : "search-index-" + docsVersion;
+        File samplesFilesDir = new File(classesDir, "ensemble");
+        File indexDir = new File("build/" + indexName);
+        File manifestFile = new File("build/" + indexName + ".manifest");
+        File bundleFile = new File(samplesFilesDir, "search/" + IndexBundle.resourceName(docsVersion));
+        bundleFile.getParentFile().mkdirs();
         long start = System.currentTimeMillis();
+        // load manifest of last build, we can only build on it if it matches the current format and both the index and
+        // its bundle exist, appending to a missing index would leave out every document that has not changed
         Directory dir = FSDirectory.open(indexDir);
-        Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_31);
+        Properties oldManifest = new Properties();
+        if (!full && manifestFile.exists() && bundleFile.exists() && IndexReader.indexExists(dir)) {
+            FileInputStream in = new FileInputStream(manifestFile);
+            try {
+                oldManifest.load(in);
+            } finally {
+                in.close();
+            }
+            if (!INDEX_FORMAT.equals(oldManifest.getProperty(INDEX_FORMAT_KEY))) oldManifest.clear();
+        }
+        boolean incremental = !oldManifest.isEmpty();
+        Properties manifest = new Properties();
+        manifest.setProperty(INDEX_FORMAT_KEY, INDEX_FORMAT);
+        // find all samples and javadoc pages, keeping the ones that have changed
+        List<File> sampleFiles = new ArrayList<File>();
+        // samples are the same whatever the javadoc version so they are only in the index of the current docs
+        if (docsVersion == null) findSamples(samplesDir, sampleFiles);
+        Map<String, File> changedFiles = new LinkedHashMap<String, File>();
+        for (File sampleFile : sampleFiles) {
+            String key = "sample:" + sampleFile.getPath().substring(samplesDir.getPath().length() + 1).replace('\\', '/');
+            updateManifest(manifest, oldManifest, key, sampleFile, changedFiles);
+        }
+        try {
+            for (String classUrl : findJavaDocClassUrls(docDir)) {
+                updateManifest(manifest, oldManifest, "doc:" + classUrl, new File(docDir, classUrl), changedFiles);
+            }
+        } catch (IOException e) {
+            System.out.println("\nWarning: We were not able to locate the JavaFX API documentation for your build environment.\n"
+                    + "Ensemble search will not include the API documentation.\n");
+        }
+        if (benchmark) {
+            List<File> docFiles = new ArrayList<File>();
+            for (Map.Entry<String, File> entry : changedFiles.entrySet()) {
+                if (entry.getKey().startsWith("doc:")) docFiles.add(entry.getValue());
+            }
+            benchmarkExtractors(docFiles);
+            benchmark(changedFiles, threads);
+            dir.close();
+            return;
+        }
+        List<String> removedKeys = new ArrayList<String>();
+        for (String key : oldManifest.stringPropertyNames()) {
+            if (!manifest.containsKey(key)) removedKeys.add(key);
+        }
+
+        if (docsVersion != null) {
+            if (docsUrl == null) docsUrl = docDir.getAbsoluteFile().toURI().toString();
+            if (!docsUrl.endsWith("/")) docsUrl += "/";
+            addDocsVersion(new File(bundleFile.getParentFile(), FederatedSearcher.VERSIONS_RESOURCE), docsVersion, docsUrl);
+        }
+        // samples file for building pages later
+        if (docsVersion == null) {
+            FileWriter sampleFilesCache = new FileWriter(new File(samplesFilesDir,"samplesAll.txt"));
+            for (File sampleFile: sampleFiles) {
+                    sampleFilesCache.write(sampleFile.toURI().toString());
+                    sampleFilesCache.write('\n');
+            }
+            sampleFilesCache.flush();
+            sampleFilesCache.close();
+            // catalog of the parsed samples so their pages can be created without reading the sources
+            List<SampleInfo> samples = new ArrayList<SampleInfo>(sampleFiles.size());
+            List<String> samplePaths = new ArrayList<String>(sampleFiles.size());
+            for (File sampleFile : sampleFiles) {
+                String sourceFileUrl = sampleFile.toURI().toString();
+                samples.add(new SampleInfo(sourceFileUrl,
+                        sourceFileUrl.substring(sourceFileUrl.lastIndexOf('/')+1, sourceFileUrl.length()-5),
+                        readFile(sampleFile)));
+                samplePaths.add(sampleFile.getPath().substring(samplesDir.getPath().length() + 1).replace('\\', '/'));
+            }
+            SampleCatalog.write(samples, samplePaths, new File(samplesFilesDir, SampleCatalog.RESOURCE_NAME));
+        }
+
+        if (incremental && changedFiles.isEmpty() && removedKeys.isEmpty()) {
+            IndexReader reader = IndexReader.open(dir, true);
+            System.out.println("Search index is up to date, reused " + reader.numDocs() + " documents");
+            reader.close();
+            dir.close();
+            return;
+        }
+        // create index
+        ///System.out.println("Indexing to directory '" + indexDir + "'...");
+        Analyzer analyzer = CodeAnalyzer.create(Version.LUCENE_31, true);
         IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_31, analyzer);
-        iwc.setOpenMode(OpenMode.CREATE);
-        // generate and write index of all java doc and samples
+        iwc.setOpenMode(incremental ? OpenMode.CREATE_OR_APPEND : OpenMode.CREATE);
         IndexWriter writer = new IndexWriter(dir, iwc);
+        // remove documents for files that have changed or gone
+        for (String key : removedKeys) writer.deleteDocuments(new Term(SOURCE_FILE, key));
+        for (String key : changedFiles.keySet()) writer.deleteDocuments(new Term(SOURCE_FILE, key));
+        // generate and write index of changed java doc and samples
+        indexFiles(writer, changedFiles, threads);
+        writer.commit();
+        int totalDocuments = writer.numDocs();
+        writer.close();
+        // type ahead completions and typo tolerant lookup over the names of everything in the index
+        Map<DocumentType, TreeMap<String, List<Integer>>> names = CompletionIndex.collectNames(dir);
+        CompletionIndex.write(dir, names);
+        NameTrigramIndex.write(dir, names);
+        // pack the index into the single bundle resource that is loaded at runtime
+        IndexBundle.write(dir, bundleFile, compress);
+        dir.close();
+        // save manifest once the index is complete
+        FileOutputStream out = new FileOutputStream(manifestFile);
+        try {
+            manifest.store(out, "Ensemble search index manifest");
+        } finally {
+            out.close();
+        }
 
-        List<String> samplesFileList = new ArrayList<String>();
+        System.out.println("Search index built from " + changedFiles.size() + " changed and " + removedKeys.size()
+                + " removed files: " + documentsAdded.get() + " documents rebuilt, "
+                + (totalDocuments - documentsAdded.get()) + " reused");
+        // print time taken
+        ///System.out.println(System.currentTimeMillis() - start + " total milliseconds");
+    }
 
-        indexSamples(writer, samplesDir, samplesFileList);
+    /**
+     * Parse the given sample and javadoc files on a pool of threads and add their documents to the writer. Documents
+     * are added in the iteration order of the files map as each file's parse completes, so the parsing of later files
+     * overlaps with the writing of earlier ones while the resulting index stays deterministic.
+     *
+     * @param writer  The index writer to add documents to
+     * @param files   Map of manifest key to file, samples keys start with "sample:" and javadoc keys are "doc:" followed
+     *                by the page's url relative to the javadoc root
+     * @param threads The number of threads to parse with
+     * @throws IOException If there was a problem reading a file or writing the index
+     */
+    static void indexFiles(IndexWriter writer, Map<String, File> files, int threads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Index Parser " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
         try {
-            indexJavaDocAllClasses(writer, docDir);
-        } catch (Exception e) {
-            System.out.println("\nWarning: We were not able to locate the JavaFX API documentation for your build environment.\n"
-                    + "Ensemble search will not include the API documentation.\n"); 
+            List<Future<List<Document>>> results = new ArrayList<Future<List<Document>>>(files.size());
+            for (final Map.Entry<String, File> entry : files.entrySet()) {
+                results.add(executor.submit(new Callable<List<Document>>() {
+                    @Override public List<Document> call() throws Exception {
+                        List<Document> documents = new ArrayList<Document>();
+                        if (entry.getKey().startsWith("sample:")) {
+                            indexSample(documents, entry.getValue(), entry.getKey());
+                        } else {
+                            indexDocs(documents, entry.getValue(), entry.getKey());
+                        }
+                        return documents;
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                List<Document> documents;
+                try {
+                    documents = results.get(i).get();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while indexing");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                    throw new RuntimeException(e.getCause());
+                }
+                // let go of the parsed documents as soon as they are written
+                results.set(i, null);
+                for (Document document : documents) {
+                    writer.addDocument(document);
+                    documentsAdded.incrementAndGet();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
         }
-        writer.close();
-        // create a listAll.txt file that is used
-        FileWriter listAllOut = new FileWriter(new File(indexDir,"listAll.txt"));
-        for (String fileName: dir.listAll()) {
-            if (!"listAll.txt".equals(fileName)) { // don't include the "listAll.txt" file
-                Long length = dir.fileLength(fileName);
-                listAllOut.write(fileName);
-                listAllOut.write(':');
-                listAllOut.write(length.toString());
-                listAllOut.write('\n');
+    }
+
+    /**
+     * Build an in memory index of all the given files with 1, 2, 4 ... maxThreads parsing threads and print the best
+     * time of a few runs for each, along with the speedup over a single thread.
+     *
+     * @param files      Map of manifest key to file to index
+     * @param maxThreads The largest number of threads to try
+     * @throws IOException If there was a problem reading a file or writing the index
+     */
+    private static void benchmark(Map<String, File> files, int maxThreads) throws IOException {
+        System.out.println("Indexing " + files.size() + " files on " + Runtime.getRuntime().availableProcessors() + " processors");
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) threadCounts.add(threads);
+        threadCounts.add(maxThreads);
+        // first run warms up the jit
+        threadCounts.add(0, 1);
+        long singleThreadTime = 0;
+        for (int run = 0; run < threadCounts.size(); run++) {
+            int threads = threadCounts.get(run);
+            long best = Long.MAX_VALUE;
+            int documents = 0;
+            for (int i = 0; i < 3; i++) {
+                Directory dir = new RAMDirectory();
+                IndexWriter writer = new IndexWriter(dir,
+                        new IndexWriterConfig(Version.LUCENE_31, CodeAnalyzer.create(Version.LUCENE_31, true)));
+                documentsAdded.set(0);
+                long start = System.nanoTime();
+                indexFiles(writer, files, threads);
+                writer.commit();
+                best = Math.min(best, System.nanoTime() - start);
+                documents = writer.numDocs();
+                writer.close();
+                dir.close();
             }
+            if (run == 0) continue;
+            if (threads == 1) singleThreadTime = best;
+            System.out.printf("%2d threads: %6d documents in %6.1f ms, speedup %.2fx%n", threads, documents,
+                    best / 1e6, (double) singleThreadTime / best);
         }
-        listAllOut.flush();
-        listAllOut.close();
+    }
 
-        FileWriter sampleFilesCache = new FileWriter(new File(samplesFilesDir,"samplesAll.txt"));
-        for (String oneSample: samplesFileList) {
-                sampleFilesCache.write(oneSample);
-                sampleFilesCache.write('\n');
+    /**
+     * Add a javadoc version to the list of versions that have an index bundle, replacing the line of the version if it
+     * is already there. Each line is the version and the url its javadoc is published at, separated by a space.
+     *
+     * @param versionsFile The versions list resource file
+     * @param docsVersion  The javadoc version
+     * @param docsUrl      The url of the javadoc root of the version, ending with '/'
+     */
+    private static void addDocsVersion(File versionsFile, String docsVersion, String docsUrl) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        if (versionsFile.exists()) {
+            BufferedReader reader = new BufferedReader(new FileReader(versionsFile));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().length() > 0 && !line.trim().split("\\s+")[0].equals(docsVersion)) lines.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        lines.add(docsVersion + ' ' + docsUrl);
+        FileWriter writer = new FileWriter(versionsFile);
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
         }
-        sampleFilesCache.flush();
-        sampleFilesCache.close();
+    }
 
-        // print time taken
-        ///System.out.println(System.currentTimeMillis() - start + " total milliseconds");
+    /**
+     * Add a file's content hash to the new manifest, collecting it as changed if the hash differs from the old manifest
+     */
+    private static void updateManifest(Properties manifest, Properties oldManifest, String key, File file,
+                                       Map<String, File> changedFiles) throws IOException {
+        String hash = contentHash(file);
+        manifest.setProperty(key, hash);
+        if (!hash.equals(oldManifest.getProperty(key))) changedFiles.put(key, file);
     }
 
+    private static String contentHash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+        } finally {
+            in.close();
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) hex.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+        return hex.toString();
+    }
 
-    private static void indexJavaDocAllClasses(IndexWriter writer, File javaDocRoot)  throws Exception {
+    /**
+     * Get the relative urls of all class pages listed in the javadoc all classes page
+     */
+    static List<String> findJavaDocClassUrls(File javaDocRoot)  throws IOException {
         StringBuilder builder = new StringBuilder();
         BufferedReader reader = new BufferedReader(new FileReader(new File(javaDocRoot,"allclasses-noframe.html")));
         String line;
@@ -116,12 +431,12 @@ public class BuildEnsembleSearchIndex {
         }
         reader.close();
         // parse package
+        List<String> classUrls = new ArrayList<String>();
         Matcher matcher = findClassUrl.matcher(builder);
         while (matcher.find()) {
-            String classUrl = matcher.group(1);
-            ///System.out.println("\n\nclassUrl = " + classUrl);
-            indexDocs(writer, new File(javaDocRoot, classUrl));
+            classUrls.add(matcher.group(1));
         }
+        return classUrls;
 
         /*
 SampleInfo{
@@ -137,113 +452,89 @@ SampleInfo{
     }
 
     /**
-     * Index all the sample java files in a directory or a single sample file
+     * Find all the sample java files in a directory or a single sample file
      *
-     * @param writer
-     * @param file
-     * @throws IOException
+     * @param file The sample file or directory of samples
+     * @param sampleFiles List to add sample files to, in sorted order
      */
-    private static void indexSamples(IndexWriter writer, File file, List<String> samplesFilesList) throws IOException {
-        ///System.out.println("BuildEnsembleSearchIndex.indexSamples("+file+")");
-        ///System.out.println("file.exists() = " + file.exists());
-        ///System.out.println("file.isDirectory() = " + file.isDirectory());
+    private static void findSamples(File file, List<File> sampleFiles) {
         if (file.isDirectory()) {
-          //  String savedDirName = file.getParent() + file.getName() + "/";
-          //  System.out.println("indexSamples: savedDirName = " + savedDirName);
             String[] files = file.list();
             if (files != null) {
+                Arrays.sort(files);
                 for (String fileName : files) {
-                    indexSamples(writer, new File(file, fileName), samplesFilesList);
+                    findSamples(new File(file, fileName), sampleFiles);
                 }
             }
         } else if (file.getName().toLowerCase().endsWith(".java")) {
-            // read file contents into a string
-            StringBuilder contentBuilder = new StringBuilder();
-            BufferedReader br = new BufferedReader(new FileReader(file));
-            try {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    contentBuilder.append(line);
-                    contentBuilder.append('\n');
-                }
-            } finally {
-                br.close();
-            }
-            final String fileContent = contentBuilder.toString();
-            String sourceFileUrl = file.toURI().toString();          
-            String unqualifiedClassName = sourceFileUrl.substring(sourceFileUrl.lastIndexOf('/')+1, sourceFileUrl.length()-5);
-            SampleInfo sampleInfo = new SampleInfo(sourceFileUrl, unqualifiedClassName, fileContent);
+            sampleFiles.add(file);
+        }
+    }
 
-           // System.out.println("sampleInfo = " + sampleInfo);
-            //Samples file for building pages later
-            samplesFilesList.add(sourceFileUrl);
+    /**
+     * Index a single sample java file
+     *
+     * @param documents The list to add the sample's document to
+     * @param file The sample java file
+     * @param sourceKey The manifest key for the file
+     * @throws IOException If there was a problem indexing the file
+     */
+    private static void indexSample(List<Document> documents, File file, String sourceKey) throws IOException {
+        // read file contents into a string
+        final String fileContent = readFile(file);
+        String sourceFileUrl = file.toURI().toString();
+        String unqualifiedClassName = sourceFileUrl.substring(sourceFileUrl.lastIndexOf('/')+1, sourceFileUrl.length()-5);
+        SampleInfo sampleInfo = new SampleInfo(sourceFileUrl, unqualifiedClassName, fileContent);
 
-            // write class entry to index
-            addDocument(writer, DocumentType.SAMPLE,
-                new Field("name", sampleInfo.getName(), Field.Store.YES, Field.Index.ANALYZED),
-                new Field("description", sampleInfo.getDescription(), Field.Store.NO, Field.Index.ANALYZED),
-                new Field("shortDescription", sampleInfo.getDescription().substring(0, Math.min(160, sampleInfo.getDescription().length())),
-                        Field.Store.YES, Field.Index.NOT_ANALYZED),
-                new Field("ensemblePath", sampleInfo.getEnsemblePath(), Field.Store.YES, Field.Index.NOT_ANALYZED)
-            );
-        }
+        // write class entry to index
+        addDocument(documents, sourceKey, DocumentType.SAMPLE,
+            new Field("name", sampleInfo.getName(), Field.Store.YES, Field.Index.ANALYZED),
+            new Field("description", sampleInfo.getDescription(), Field.Store.NO, Field.Index.ANALYZED),
+            new Field("shortDescription", sampleInfo.getDescription().substring(0, Math.min(160, sampleInfo.getDescription().length())),
+                    Field.Store.YES, Field.Index.NOT_ANALYZED),
+            new Field("ensemblePath", sampleInfo.getEnsemblePath(), Field.Store.YES, Field.Index.NOT_ANALYZED),
+            // identifiers in the source and the source itself, to find the line a search matched
+            new Field(SourceCodeAnalyzer.SOURCE_CODE_FIELD, fileContent, Field.Store.NO, Field.Index.ANALYZED_NO_NORMS),
+            new Field(IndexSearcher.SOURCE_FIELD, fileContent, Field.Store.YES, Field.Index.NO)
+        );
     }
 
     /**
      * Index a JavaDoc page for a single class, interface or enum
      *
-     * @param writer The index writer to add documents to
+     * @param documents The list to add the class and member documents to
      * @param file The javadoc html file
+     * @param sourceKey The manifest key for the file, "doc:" followed by the page's url relative to the javadoc root
      * @throws IOException If there was a problem indexing the file
      */
-    private static void indexDocs(IndexWriter writer, File file) throws IOException {
-        // read file contents into a string
-        StringBuilder contentBuilder = new StringBuilder();
-        BufferedReader br = new BufferedReader(new FileReader(file));
+    private static void indexDocs(List<Document> documents, File file, String sourceKey) throws IOException {
+        // extract class and members in a single pass over the file
+        JavaDocExtractor.ClassDoc classDoc;
+        Reader reader = new FileReader(file);
         try {
-            String line;
-            while ((line = br.readLine()) != null) {
-                contentBuilder.append(line);
-                contentBuilder.append('\n');
-            }
+            classDoc = JavaDocExtractor.extract(reader);
         } finally {
-            br.close();
+            reader.close();
         }
-        final String content = contentBuilder.toString();
-        // get file url
-        String fileUrl = convertUrlToOracleDotCom(file.toURI().toString());
-        // get ensemble path
-        final String ensembleUrl = DocsHelper.getPagePath(fileUrl, "http://download.oracle.com/javafx/2.0/api/");
-        // extract package and class
-        Matcher packageAndClassMatcher = PACKAGE_AND_CLASS.matcher(content);
-        // search and if we fail to find ignore this file
-        if (!packageAndClassMatcher.find()) {
+        // if we fail to find a class ignore this file
+        if (classDoc == null) {
             //System.out.println("!!!! Ignoring [" + file + "] because no class or package was found");
             return;
-        } else {
-            //System.out.println("Adding [" + file + "]");
         }
-        //System.out.println("        fileUrl = " + fileUrl);
-        String packageName = packageAndClassMatcher.group(1);
-        //System.out.println("        packageName = " + packageName);
-        String classType = packageAndClassMatcher.group(2).toLowerCase();
-        //System.out.println("        classType = " + classType);
-        String className = packageAndClassMatcher.group(3);
-        //System.out.println("        className = " + className);
+        // get file url on oracle.com from the page's url relative to the javadoc root, wherever the docs are installed
+        String fileUrl = DOCS_BASE_URL + sourceKey.substring(sourceKey.indexOf(':') + 1);
+        // get ensemble path
+        final String ensembleUrl = DocsHelper.getPagePath(fileUrl, DOCS_BASE_URL);
+        String packageName = classDoc.getPackageName();
+        String className = classDoc.getClassName();
         // extract document type
         DocumentType documentType = DocumentType.CLASS;
-        if ("enum".equals(classType)) {
+        if ("enum".equals(classDoc.getClassType())) {
             documentType = DocumentType.ENUM;
         }
-        // extract javadoc description
-        Matcher classDescriptionMatcher = CLASS_DESCRIPTION.matcher(content);
-        String classDescription = "";
-        if (classDescriptionMatcher.find()) {
-            classDescription = cleanHTML(classDescriptionMatcher.group(1));
-        }
-        ///System.out.println("classDescription = " + classDescription);
+        String classDescription = classDoc.getDescription();
         // write class entry to index
-        addDocument(writer, documentType,
+        addDocument(documents, sourceKey, documentType,
                 new Field("name", className, Field.Store.YES, Field.Index.ANALYZED),
                 new Field("description", classDescription, Field.Store.NO, Field.Index.ANALYZED),
                 new Field("shortDescription", classDescription.substring(0,Math.min(160,classDescription.length())),
@@ -252,140 +543,159 @@ SampleInfo{
                 new Field("url", fileUrl, Field.Store.YES, Field.Index.NOT_ANALYZED),
                 new Field("ensemblePath", ensembleUrl, Field.Store.YES, Field.Index.NOT_ANALYZED)
         );
+        // write properties, methods, fields and enum constants
+        for (JavaDocExtractor.Member member : classDoc.getMembers()) {
+            String anchor = member.getName();
+            if (member.getDocumentType() == DocumentType.METHOD) anchor += "()";
+            String description = member.getDescription();
+            addDocument(documents, sourceKey, member.getDocumentType(),
+                    new Field("name", member.getName(), Field.Store.YES, Field.Index.ANALYZED),
+                    new Field("description", description, Field.Store.NO, Field.Index.ANALYZED),
+                    new Field("shortDescription", description.substring(0,Math.min(160,description.length())),
+                            Field.Store.YES, Field.Index.NOT_ANALYZED),
+                    new Field("url", fileUrl + "#" + anchor, Field.Store.YES, Field.Index.NOT_ANALYZED),
+                    new Field("className", className, Field.Store.YES, Field.Index.NOT_ANALYZED),
+                    new Field("package", packageName, Field.Store.YES, Field.Index.NOT_ANALYZED),
+                    new Field("ensemblePath", ensembleUrl + "#" + anchor, Field.Store.YES, Field.Index.NOT_ANALYZED)
+            );
+        }
+    }
 
-        // extract properties
-        Matcher propertySummaryMatcher = PROPERTY_SUMMARY.matcher(content);
-        if (propertySummaryMatcher.find()) {
-            String propertySummaryTable = propertySummaryMatcher.group(1);           
-            Matcher propertyMatcher = PROPERTY.matcher(propertySummaryTable);
-            while (propertyMatcher.find()) {
-                String url = propertyMatcher.group(1);
-                String propertyName = propertyMatcher.group(2);
-                String description = cleanHTML(propertyMatcher.group(3));
-                //System.out.println("            propertyName = " + propertyName);
-                //System.out.println("                    description = " + description);
-                //System.out.println("                    url = " + url);
-                url = fileUrl + "#" + propertyName;
-                //System.out.println("                    oracle url = " + url);
-                // write class entry to index
-                addDocument(writer, DocumentType.PROPERTY,
-                        new Field("name", propertyName, Field.Store.YES, Field.Index.ANALYZED),
-                        new Field("description", description, Field.Store.NO, Field.Index.ANALYZED),
-                        new Field("shortDescription", description.substring(0,Math.min(160,description.length())),
-                                Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("url", url, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("className", className, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("package", packageName, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("ensemblePath", ensembleUrl + "#" + propertyName, Field.Store.YES, Field.Index.NOT_ANALYZED)
-                );
-            }
+    /**
+     * Compare the time taken to extract all the given javadoc pages with the single pass {@link JavaDocExtractor} and
+     * with the original regular expressions, checking that both extract the same classes and members. Pages are read
+     * into memory first so only the extraction is timed.
+     *
+     * @param docFiles The javadoc class pages
+     * @throws IOException If there was a problem reading a page
+     */
+    private static void benchmarkExtractors(List<File> docFiles) throws IOException {
+        List<String> pages = new ArrayList<String>(docFiles.size());
+        long totalChars = 0;
+        for (File file : docFiles) {
+            String page = readFile(file);
+            pages.add(page);
+            totalChars += page.length();
         }
-        // extract methods
-        Matcher methodSummaryMatcher = METHOD_SUMMARY.matcher(content);
-        if (methodSummaryMatcher.find()) {
-            String methodSummaryTable = methodSummaryMatcher.group(1);
-            Matcher methodMatcher = PROPERTY.matcher(methodSummaryTable);
-            while (methodMatcher.find()) {
-                String url = methodMatcher.group(1);
-                String methodName = methodMatcher.group(2);
-                String description = cleanHTML(methodMatcher.group(3));
-                //System.out.println("            methodName = " + methodName);
-                //System.out.println("                    description = " + description);
-                //System.out.println("                    url = " + url);
-                url = fileUrl + "#" + methodName+"()";
-                //System.out.println("                    oracle url = " + url);
-                // write class entry to index
-                addDocument(writer, DocumentType.METHOD,
-                        new Field("name", methodName, Field.Store.YES, Field.Index.ANALYZED),
-                        new Field("description", description, Field.Store.NO, Field.Index.ANALYZED),
-                        new Field("shortDescription", description.substring(0,Math.min(160,description.length())),
-                                Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("url", url, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("className", className, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("package", packageName, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("ensemblePath", ensembleUrl + "#" + methodName + "()", Field.Store.YES, Field.Index.NOT_ANALYZED)
-                );
+        // check results are the same
+        int mismatches = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            String streamed = describe(JavaDocExtractor.extract(new StringReader(pages.get(i))));
+            String regex = describe(extractWithRegex(pages.get(i)));
+            if (!streamed.equals(regex)) {
+                if (mismatches++ == 0) System.out.println("First mismatch in " + docFiles.get(i));
             }
         }
-        // extract fields
-        Matcher fieldSummaryMatcher = FIELD_SUMMARY.matcher(content);
-        if (fieldSummaryMatcher.find()) {
-            String fieldSummaryTable = fieldSummaryMatcher.group(1);
-            Matcher fieldMatcher = PROPERTY.matcher(fieldSummaryTable);
-            while (fieldMatcher.find()) {
-                String url = fieldMatcher.group(1);
-                String fieldName = fieldMatcher.group(2);
-                String description = cleanHTML(fieldMatcher.group(3));
-                //System.out.println(" #####     fieldName = " + fieldName);
-                //System.out.println("                    description = " + description);
-                //System.out.println("                    url = " + url);
-                url = fileUrl + "#" + fieldName;
-                //System.out.println("                    oracle url = " + url);
-                // write class entry to index
-                addDocument(writer, DocumentType.FIELD,
-                        new Field("name", fieldName, Field.Store.YES, Field.Index.ANALYZED),
-                        new Field("description", description, Field.Store.NO, Field.Index.ANALYZED),
-                        new Field("shortDescription", description.substring(0,Math.min(160,description.length())),
-                                Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("url", url, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("className", className, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("package", packageName, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("ensemblePath", ensembleUrl + "#" + fieldName, Field.Store.YES, Field.Index.NOT_ANALYZED)
-                );
+        System.out.println("Extracting " + pages.size() + " javadoc pages (" + totalChars / 1024 + "k chars), "
+                + mismatches + " differ between extractors");
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            for (String page : pages) JavaDocExtractor.extract(new StringReader(page));
+            long streamedTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String page : pages) extractWithRegex(page);
+            long regexTime = System.nanoTime() - start;
+            System.out.printf("single pass %8.1f ms, regex %8.1f ms, %.1fx faster%n",
+                    streamedTime / 1e6, regexTime / 1e6, (double) regexTime / streamedTime);
+        }
+    }
+
+    /**
+     * Describe an extracted class with whitespace normalized, for comparing extractors
+     */
+    private static String describe(JavaDocExtractor.ClassDoc classDoc) {
+        if (classDoc == null) return "null";
+        StringBuilder builder = new StringBuilder();
+        builder.append(classDoc.getPackageName()).append('|').append(classDoc.getClassType()).append('|')
+                .append(classDoc.getClassName()).append('|').append(classDoc.getDescription().trim()).append('\n');
+        for (JavaDocExtractor.Member member : classDoc.getMembers()) {
+            builder.append(member.getDocumentType()).append('|').append(member.getName()).append('|')
+                    .append(member.getDescription()).append('\n');
+        }
+        return builder.toString().replaceAll("[ ]+", " ").replaceAll(" ?\\| ?", "|").replaceAll(" \n", "\n");
+    }
+
+    private static String readFile(File file) throws IOException {
+        StringBuilder contentBuilder = new StringBuilder();
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                contentBuilder.append(line);
+                contentBuilder.append('\n');
             }
+        } finally {
+            br.close();
+        }
+        return contentBuilder.toString();
+    }
+
+    /**
+     * Extract a class and its members from a javadoc page with regular expressions, this is how pages were indexed
+     * before {@link JavaDocExtractor} and is kept as a reference for it.
+     *
+     * @param content The javadoc page
+     * @return The extracted class or null if the page is not a class, interface or enum page
+     */
+    private static JavaDocExtractor.ClassDoc extractWithRegex(String content) {
+        // extract package and class
+        Matcher packageAndClassMatcher = PACKAGE_AND_CLASS.matcher(content);
+        // search and if we fail to find ignore this file
+        if (!packageAndClassMatcher.find()) return null;
+        String packageName = packageAndClassMatcher.group(1);
+        String classType = packageAndClassMatcher.group(2).toLowerCase();
+        String className = packageAndClassMatcher.group(3);
+        // extract javadoc description
+        Matcher classDescriptionMatcher = CLASS_DESCRIPTION.matcher(content);
+        String classDescription = "";
+        if (classDescriptionMatcher.find()) {
+            classDescription = cleanHTML(classDescriptionMatcher.group(1));
         }
-        // extract enums
-        Matcher enumSummaryMatcher = ENUM_SUMMARY.matcher(content);
-        if (enumSummaryMatcher.find()) {
-            String enumSummaryTable = enumSummaryMatcher.group(1);
-            Matcher enumMatcher = PROPERTY.matcher(enumSummaryTable);
-            while (enumMatcher.find()) {
-                String url = enumMatcher.group(1);
-                String enumName = enumMatcher.group(2);
-                String description = cleanHTML(enumMatcher.group(3));
-                //System.out.println("            enumName = " + enumName);
-                //System.out.println("                    description = " + description);
-                //System.out.println("                    url = " + url);
-                url = fileUrl + "#" + enumName;
-                ///System.out.println("                    oracle url = " + url);
-                // write class entry to index
-                addDocument(writer, DocumentType.ENUM,
-                        new Field("name", enumName, Field.Store.YES, Field.Index.ANALYZED),
-                        new Field("description", description, Field.Store.NO, Field.Index.ANALYZED),
-                        new Field("shortDescription", description.substring(0,Math.min(160,description.length())),
-                                Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("url", url, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("className", className, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("package", packageName, Field.Store.YES, Field.Index.NOT_ANALYZED),
-                        new Field("ensemblePath", ensembleUrl+ "#" + enumName, Field.Store.YES, Field.Index.NOT_ANALYZED)
-                );
+        JavaDocExtractor.ClassDoc classDoc = new JavaDocExtractor.ClassDoc(packageName, classType, className, classDescription);
+        extractMembersWithRegex(classDoc, DocumentType.PROPERTY, PROPERTY_SUMMARY, content);
+        extractMembersWithRegex(classDoc, DocumentType.METHOD, METHOD_SUMMARY, content);
+        extractMembersWithRegex(classDoc, DocumentType.FIELD, FIELD_SUMMARY, content);
+        extractMembersWithRegex(classDoc, DocumentType.ENUM, ENUM_SUMMARY, content);
+        return classDoc;
+    }
+
+    private static void extractMembersWithRegex(JavaDocExtractor.ClassDoc classDoc, DocumentType documentType,
+                                                Pattern summary, String content) {
+        Matcher summaryMatcher = summary.matcher(content);
+        if (summaryMatcher.find()) {
+            String summaryTable = summaryMatcher.group(1);
+            Matcher memberMatcher = PROPERTY.matcher(summaryTable);
+            while (memberMatcher.find()) {
+                classDoc.addMember(documentType, memberMatcher.group(2), cleanHTML(memberMatcher.group(3)));
             }
         }
     }
 
     /**
-     * Create a new document and write it to the given writer
+     * Create a new document and add it to the given list
      *
-     * @param writer       The writer to write out to
+     * @param documents    The list of documents to add to
+     * @param sourceKey    The manifest key of the file the document comes from
      * @param documentType The document type to save in the doc
      * @param fields       The searchable and data fields to write into doc
-     * @throws IOException If there was problem writing doc
      */
-    private static void addDocument(IndexWriter writer, DocumentType documentType, Field... fields) throws IOException {
+    private static void addDocument(List<Document> documents, String sourceKey, DocumentType documentType, Field... fields) {
         // make a new, empty document
         Document doc = new Document();
         // add doc type field
         doc.add(new Field("documentType", documentType.toString(), Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS));
+        // add source file so the document can be replaced when the file changes
+        doc.add(new Field(SOURCE_FILE, sourceKey, Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
         // add other fields
         if (fields != null) {
             for (Field field : fields) doc.add(field);
         }
-        // write into index, assuming we are recreating every time
-        writer.addDocument(doc);
+        // collect for writing into index, any old version has already been deleted
+        documents.add(doc);
     }
 
     /**
-     * Clean HTML, removing all tags and un-escaping so that we can index it cleanly
+     * Clean HTML, removing all tags and un-escaping so that we can index it cleanly, only used by the regex extractor
      *
      * @param html The html to clean
      * @return cleaned html
@@ -401,26 +711,6 @@ SampleInfo{
         return html;
     }
 
-    /**
-     * Convert local and relative docs urls into absolute urls on oracle.com server
-     *
-     * @param url The local or relative doc url
-     * @return Absolute oracle.com url for given doc
-     */
-    private static String convertUrlToOracleDotCom(String url) {
-        //http://download.oracle.com/javafx/2.0/api/index.html
-        //http://download.oracle.com/javafx/2.0/api/javafx/scene/transform/Affine.html
-        if (url.startsWith("../")) {
-            // from - ../../../javafx/scene/shape/CubicCurveTo.html#xProperty
-            // to   - http://download.oracle.com/javafx/2.0/api/javafx/scene/shape/CubicCurveTo.html#xProperty
-            return  url.replaceAll(".*?/javafx/", "http://download.oracle.com/javafx/2.0/api/javafx/");
-        } else {
-            // from - file:///Users/jp202575/Projects/presidio/jfx/artifacts/sdk/docs/api/javafx/scene/shape/Ellipse.html
-            // to   - http://download.oracle.com/javafx/2.0/api/javafx/scene/shape/Ellipse.html
-            return url.replaceAll(".*?/sdk/docs/api/", "http://download.oracle.com/javafx/2.0/api/");
-        }
-    }
-
     /*
     Pull class urls from all classes page
      */
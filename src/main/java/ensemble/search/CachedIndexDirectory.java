@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * A lucene Directory for the search index that is served from memory mapped files rather than the java heap. The
+ * first time it is used the index bundle is extracted from the classpath into a cache directory under the user's home,
+ * keyed by the checksum of the bundle so a new build of the index is extracted again. After that the index files are
+ * mapped straight from the cache, so the index bytes live off heap and are only paged in when they are read.
+ * <p>
+ * Each bundle resource, the index of the current docs and those of other javadoc versions, is cached in its own
+ * directory so extracting one never removes another.
+ */
+public class CachedIndexDirectory extends MMapDirectory {
+    private static final File CACHE_ROOT = new File(System.getProperty("user.home"), ".ensemble-search-index");
+    // extracting takes seconds, a temporary directory untouched for longer than this was left by a crashed extract
+    private static final long STALE_TEMP_MILLIS = 60 * 1000;
+
+    public CachedIndexDirectory() throws IOException {
+        this(IndexBundle.RESOURCE_NAME);
+    }
+
+    /**
+     * @param resourceName The name of the bundle resource to cache
+     */
+    public CachedIndexDirectory(String resourceName) throws IOException {
+        super(extractIndex(resourceName));
+        setUseUnmap(UNMAP_SUPPORTED);
+    }
+
+    /**
+     * Open the best available directory for the search index, the memory mapped cache if we can create it or else the
+     * in heap classpath directory.
+     *
+     * @return Directory for reading the search index
+     */
+    public static Directory openIndexDirectory() {
+        return openIndexDirectory(IndexBundle.RESOURCE_NAME);
+    }
+
+    /**
+     * Open the best available directory for a search index bundle, see {@link #openIndexDirectory()}
+     *
+     * @param resourceName The name of the bundle resource
+     * @return Directory for reading the search index
+     */
+    public static Directory openIndexDirectory(String resourceName) {
+        try {
+            return new CachedIndexDirectory(resourceName);
+        } catch (IOException e) {
+            System.err.println("Warning: Failed to cache search index in [" + CACHE_ROOT + "], loading it into memory: " + e);
+            return new ClasspathDirectory(resourceName);
+        }
+    }
+
+    /**
+     * Extract the index bundle from the classpath into the cache, unless an identical copy is already there
+     *
+     * @param resourceName The name of the bundle resource
+     * @return The cache directory containing the index files
+     * @throws IOException If there was a problem reading the bundle or writing to the cache
+     */
+    private static File extractIndex(String resourceName) throws IOException {
+        IndexBundle bundle = IndexBundle.open(resourceName);
+        try {
+            File bundleRoot = new File(CACHE_ROOT, resourceName.substring(0, resourceName.lastIndexOf('.')));
+            File cacheDir = new File(bundleRoot, Long.toHexString(bundle.getChecksum()));
+            if (isComplete(cacheDir, bundle)) {
+                removeOldCaches(bundleRoot, cacheDir);
+                return cacheDir;
+            }
+            // extract into a temporary directory and then rename, so a half written cache is never used
+            File tempDir = new File(bundleRoot, cacheDir.getName() + ".tmp" + System.nanoTime());
+            if (!tempDir.mkdirs()) throw new IOException("Could not create [" + tempDir + "]");
+            for (IndexBundle.Entry entry : bundle.getEntries()) {
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(tempDir, entry.getName())));
+                try {
+                    bundle.copyNextFile(out);
+                } finally {
+                    out.close();
+                }
+            }
+            if (!tempDir.renameTo(cacheDir)) {
+                // another instance may have extracted the same index at the same time
+                deleteAll(tempDir);
+                if (!isComplete(cacheDir, bundle)) throw new IOException("Could not create [" + cacheDir + "]");
+            }
+            removeOldCaches(bundleRoot, cacheDir);
+            return cacheDir;
+        } finally {
+            bundle.close();
+        }
+    }
+
+    /**
+     * Remove caches of older builds of a bundle and temporary directories left by extracts that did not finish. A
+     * temporary directory is only removed if nothing in it has been written since this process started, or in the last
+     * minute, so an extract still running in another instance is left alone.
+     *
+     * @param bundleRoot The directory holding the caches of the bundle
+     * @param cacheDir   The cache in use, which is kept
+     */
+    private static void removeOldCaches(File bundleRoot, File cacheDir) {
+        long staleBefore = Math.min(ManagementFactory.getRuntimeMXBean().getStartTime(),
+                System.currentTimeMillis() - STALE_TEMP_MILLIS);
+        File[] cached = bundleRoot.listFiles();
+        if (cached != null) {
+            for (File oldDir : cached) {
+                if (oldDir.equals(cacheDir)) continue;
+                if (!oldDir.getName().contains(".tmp") || lastModified(oldDir) < staleBefore) deleteAll(oldDir);
+            }
+        }
+        // and caches from before each bundle had its own directory
+        cached = CACHE_ROOT.listFiles();
+        if (cached != null) {
+            for (File oldDir : cached) {
+                if (!oldDir.getName().startsWith("index")) deleteAll(oldDir);
+            }
+        }
+    }
+
+    /**
+     * @return The time a file or anything under it was last modified
+     */
+    private static long lastModified(File file) {
+        long lastModified = file.lastModified();
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) lastModified = Math.max(lastModified, lastModified(child));
+        }
+        return lastModified;
+    }
+
+    private static boolean isComplete(File cacheDir, IndexBundle bundle) {
+        if (!cacheDir.isDirectory()) return false;
+        for (IndexBundle.Entry entry : bundle.getEntries()) {
+            File file = new File(cacheDir, entry.getName());
+            if (!file.isFile() || file.length() != entry.getLength()) return false;
+        }
+        return true;
+    }
+
+    private static void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteAll(child);
+        }
+        file.delete();
+    }
+
+    /**
+     * Simple command line application comparing the heap used by an open index with the classpath directory and with
+     * this directory.
+     */
+    public static void main(String[] args) throws Exception {
+        long classpathHeap = measureHeap(new ClasspathDirectory());
+        long mappedHeap = measureHeap(new CachedIndexDirectory());
+        System.out.println("ClasspathDirectory   : " + (classpathHeap / 1024) + " KB heap");
+        System.out.println("CachedIndexDirectory : " + (mappedHeap / 1024) + " KB heap");
+    }
+
+    private static long measureHeap(Directory directory) throws Exception {
+        long before = usedHeap();
+        IndexReader reader = IndexReader.open(directory, true);
+        org.apache.lucene.search.IndexSearcher searcher = new org.apache.lucene.search.IndexSearcher(reader);
+        // touch every document type so the files needed for searching have been opened
+        for (DocumentType documentType : DocumentType.values()) {
+            searcher.search(new TermQuery(new Term("documentType", documentType.toString())), 5);
+        }
+        long used = usedHeap() - before;
+        searcher.close();
+        reader.close();
+        directory.close();
+        return used;
+    }
+
+    /**
+     * @return Bytes of heap in use after collecting garbage, for measuring what a structure costs
+     */
+    static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -34,38 +34,43 @@ package ensemble.search;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
-import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * A very simple implementation of lucene Directory, it reads a index from the classpath in a directory called index
- * under the package that contains this file. It depends on a "listAll.txt" file written into that directory containing
- * the names of all the other files and their sizes. In the format "name:length" one file per line. When a file needs
- * to be read the whole file is loaded into memory.
+ * A very simple implementation of lucene Directory, it reads the index from the "index.bundle" resource, or another
+ * bundle resource, under the package that contains this file, see {@link IndexBundle}. The whole bundle is read in one
+ * pass and every file is kept in memory. See {@link CachedIndexDirectory} for a version that keeps the index off the
+ * java heap.
  */
 public class ClasspathDirectory extends Directory {
     private String[] allFiles;
-    private final Map<String,Long> fileLengthMap = new HashMap<String, Long>();
+    private final Map<String,byte[]> fileDataMap = new HashMap<String, byte[]>();
 
     public ClasspathDirectory() {
-        // load list of all files
+        this(IndexBundle.RESOURCE_NAME);
+    }
+
+    /**
+     * @param resourceName The name of the bundle resource to read
+     */
+    public ClasspathDirectory(String resourceName) {
+        // load all files
         try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("index/listAll.txt")));
-            String line;
-            List<String> fileNames = new ArrayList<String>();
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(":");
-                fileNames.add(parts[0]);
-                fileLengthMap.put(parts[0], Long.parseLong(parts[1]));
+            IndexBundle bundle = IndexBundle.open(resourceName);
+            try {
+                List<IndexBundle.Entry> entries = bundle.getEntries();
+                allFiles = new String[entries.size()];
+                for (int i = 0; i < allFiles.length; i++) {
+                    allFiles[i] = entries.get(i).getName();
+                    fileDataMap.put(allFiles[i], bundle.readNextFile());
+                }
+            } finally {
+                bundle.close();
             }
-            reader.close();
-            allFiles = fileNames.toArray(new String[fileNames.size()]);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -76,10 +81,9 @@ public class ClasspathDirectory extends Directory {
     }
 
     @Override public IndexInput openInput(String s) throws IOException {
-        return new ClassPathIndexInput(
-            getClass().getResourceAsStream("index/"+s),
-            fileLengthMap.get(s).intValue()
-        );
+        byte[] data = fileDataMap.get(s);
+        if (data == null) throw new FileNotFoundException(s);
+        return new ClassPathIndexInput(data);
     }
 
     private static class ClassPathIndexInput extends IndexInput {
@@ -87,25 +91,9 @@ public class ClasspathDirectory extends Directory {
         private int pointer = 0;
         private int length;
 
-        private ClassPathIndexInput(InputStream in, int length) throws IOException {
-            this.length = length;
-            // read whole file into memory, so we can provide random access
-            data = new byte[length];
-            // read in upto 20k chunks
-            // this is needed as the amount of bytes read in any call in not 
-            // garenteed to be number asked for
-            final byte[] buf = new byte[1024*20];
-            int offset = 0, remaining = length, read;
-            do {
-                read = in.read(buf,0,Math.min(remaining, buf.length));
-                // copy read bytes to data
-                if (read > 0) {
-                    System.arraycopy(buf, 0, data, offset, read);
-                    offset += read;
-                    remaining -= read;
-                }
-            } while (read != -1 && remaining > 0);
-            in.close();
+        private ClassPathIndexInput(byte[] data) {
+            this.data = data;
+            this.length = data.length;
         }
 
         @Override public byte readByte() throws IOException {
@@ -127,10 +115,14 @@ public class ClasspathDirectory extends Directory {
     }
 
     @Override public void close() throws IOException {}
-    @Override public boolean fileExists(String s) throws IOException { throw new UnsupportedOperationException("Not implemented"); }
-    @Override public long fileModified(String s) throws IOException { throw new UnsupportedOperationException("Not implemented"); }
+    @Override public boolean fileExists(String s) throws IOException { return fileDataMap.containsKey(s); }
+    @Override public long fileModified(String s) throws IOException { return 0; }
     @Override public void touchFile(String s) throws IOException { throw new UnsupportedOperationException("Not implemented"); }
     @Override public void deleteFile(String s) throws IOException { throw new UnsupportedOperationException("Not implemented"); }
-    @Override public long fileLength(String s) throws IOException { throw new UnsupportedOperationException("Not implemented"); }
+    @Override public long fileLength(String s) throws IOException {
+        byte[] data = fileDataMap.get(s);
+        if (data == null) throw new FileNotFoundException(s);
+        return data.length;
+    }
     @Override public IndexOutput createOutput(String s) throws IOException { throw new UnsupportedOperationException("Not implemented"); }
 }
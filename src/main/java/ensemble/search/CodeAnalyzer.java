@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.ReusableAnalyzerBase;
+import org.apache.lucene.analysis.StopFilter;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.Version;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+/**
+ * Analyzer for names and descriptions of code. It tokenizes like the {@link StandardAnalyzer}, with the same lower
+ * casing and stop words, but can also split identifiers into their sub words. "translateX" is indexed as
+ * "translatex", "translate" and "x", "XMLHttpRequest" as "xmlhttprequest", "xml", "http" and "request", "Point3D"
+ * as "point3d", "point", "3" and "d" and "javafx.scene.control" as itself and "javafx", "scene" and "control". Sub
+ * words that are stop words, like the "to" of "CubicCurveTo", are dropped. Sub words are at the same position as the
+ * whole identifier so phrase queries still work.
+ * <p>
+ * The index is built with identifier splitting and queries are parsed without it, so searching for a whole identifier
+ * only matches that identifier while searching for part of one, like "curve", is a single term lookup rather than a
+ * wildcard scan.
+ * <p>
+ * Analyzers are reused for every field on a thread, so the source code of samples is analyzed by a separate
+ * {@link SourceCodeAnalyzer}. Use {@link #create} for an analyzer that handles all the fields of the index.
+ */
+public class CodeAnalyzer extends ReusableAnalyzerBase {
+    private final Version matchVersion;
+    private final boolean splitIdentifiers;
+
+    /**
+     * @param matchVersion The lucene version to match tokenizing of
+     * @param splitIdentifiers True to add the sub words of identifiers, used when indexing
+     */
+    public CodeAnalyzer(Version matchVersion, boolean splitIdentifiers) {
+        this.matchVersion = matchVersion;
+        this.splitIdentifiers = splitIdentifiers;
+    }
+
+    /**
+     * Create an analyzer for all fields of the search index, the source code field with a {@link SourceCodeAnalyzer}
+     * and all others with a CodeAnalyzer
+     *
+     * @param matchVersion The lucene version to match tokenizing of
+     * @param splitIdentifiers True to add the sub words of identifiers, used when indexing
+     */
+    public static Analyzer create(Version matchVersion, boolean splitIdentifiers) {
+        PerFieldAnalyzerWrapper analyzer = new PerFieldAnalyzerWrapper(new CodeAnalyzer(matchVersion, splitIdentifiers));
+        analyzer.addAnalyzer(SourceCodeAnalyzer.SOURCE_CODE_FIELD, new SourceCodeAnalyzer(matchVersion));
+        return analyzer;
+    }
+
+    @Override protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+        StandardTokenizer source = new StandardTokenizer(matchVersion, reader);
+        source.setMaxTokenLength(StandardAnalyzer.DEFAULT_MAX_TOKEN_LENGTH);
+        TokenStream sink = new StandardFilter(matchVersion, source);
+        if (splitIdentifiers) sink = new SubWordFilter(sink);
+        sink = new LowerCaseFilter(matchVersion, sink);
+        sink = new StopFilter(matchVersion, sink, StandardAnalyzer.STOP_WORDS_SET);
+        return new TokenStreamComponents(source, sink);
+    }
+
+    /**
+     * Find the sub words of an identifier, split at camel case humps, between letters and digits and at '.', '_', '$'
+     * and whitespace separators. Runs of capitals are kept together, "XMLHttpRequest" is "XML", "Http" and "Request".
+     *
+     * @param text The identifier
+     * @param length The number of characters of the identifier in text
+     * @param bounds Array to fill with start and end of each sub word, grown if needed
+     * @return The bounds array used, holding start,end pairs for each sub word, with the number of sub words in
+     *         element 0 and the pairs following from element 1
+     */
+    static int[] subWords(char[] text, int length, int[] bounds) {
+        int count = 0;
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text[i] : ' ';
+            boolean separator = c == '.' || c == '_' || c == '$' || Character.isWhitespace(c);
+            boolean boundary = false;
+            if (start >= 0 && !separator && i > start) {
+                char previous = text[i - 1];
+                boundary = (Character.isLowerCase(previous) && Character.isUpperCase(c))
+                        || (Character.isUpperCase(previous) && Character.isUpperCase(c)
+                                && i + 1 < length && Character.isLowerCase(text[i + 1]))
+                        || (Character.isDigit(previous) != Character.isDigit(c));
+            }
+            if (start >= 0 && (separator || boundary)) {
+                if (1 + (count + 1) * 2 > bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2 + 2);
+                bounds[1 + count * 2] = start;
+                bounds[2 + count * 2] = i;
+                count++;
+                start = -1;
+            }
+            if (start < 0 && !separator) start = i;
+        }
+        if (bounds.length == 0) bounds = new int[1];
+        bounds[0] = count;
+        return bounds;
+    }
+
+    /**
+     * Get the start of each sub word of an identifier after the first
+     *
+     * @param identifier The identifier or name
+     * @return Offsets into identifier of each sub word but the first
+     */
+    public static int[] subWordStarts(String identifier) {
+        int[] bounds = subWords(identifier.toCharArray(), identifier.length(), new int[8]);
+        int count = bounds[0];
+        int[] starts = new int[Math.max(0, count - 1)];
+        for (int i = 1; i < count; i++) starts[i - 1] = bounds[1 + i * 2];
+        return starts;
+    }
+
+    /**
+     * Filter that follows each token that is made of several sub words with those sub words, at the same position
+     */
+    private static final class SubWordFilter extends TokenFilter {
+        private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+        private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+        private final PositionIncrementAttribute positionIncrementAttribute = addAttribute(PositionIncrementAttribute.class);
+        private int[] bounds = new int[9];
+        private int subWordCount;
+        private int nextSubWord;
+        private char[] token = new char[32];
+        private int tokenStartOffset;
+        private boolean tokenOffsetsMatch;
+
+        private SubWordFilter(TokenStream input) {
+            super(input);
+        }
+
+        @Override public boolean incrementToken() throws IOException {
+            if (nextSubWord < subWordCount) {
+                int start = bounds[1 + nextSubWord * 2];
+                int end = bounds[2 + nextSubWord * 2];
+                nextSubWord++;
+                termAttribute.copyBuffer(token, start, end - start);
+                positionIncrementAttribute.setPositionIncrement(0);
+                if (tokenOffsetsMatch) offsetAttribute.setOffset(tokenStartOffset + start, tokenStartOffset + end);
+                return true;
+            }
+            if (!input.incrementToken()) return false;
+            // the whole token goes first, then remember its sub words if it has more than one
+            int length = termAttribute.length();
+            bounds = subWords(termAttribute.buffer(), length, bounds);
+            subWordCount = bounds[0] > 1 ? bounds[0] : 0;
+            nextSubWord = 0;
+            if (subWordCount > 0) {
+                if (token.length < length) token = new char[length];
+                System.arraycopy(termAttribute.buffer(), 0, token, 0, length);
+                tokenStartOffset = offsetAttribute.startOffset();
+                tokenOffsetsMatch = offsetAttribute.endOffset() - tokenStartOffset == length;
+            }
+            return true;
+        }
+
+        @Override public void reset() throws IOException {
+            super.reset();
+            subWordCount = 0;
+            nextSubWord = 0;
+        }
+    }
+
+    /**
+     * Simple command line test application, prints the tokens for each argument
+     */
+    public static void main(String[] args) throws Exception {
+        CodeAnalyzer analyzer = new CodeAnalyzer(Version.LUCENE_31, true);
+        for (String arg : args) {
+            TokenStream tokens = analyzer.reusableTokenStream("name", new StringReader(arg));
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute positionIncrement = tokens.addAttribute(PositionIncrementAttribute.class);
+            tokens.reset();
+            StringBuilder builder = new StringBuilder(arg).append(" ->");
+            while (tokens.incrementToken()) {
+                builder.append(positionIncrement.getPositionIncrement() == 0 ? " +" : " ").append(term);
+            }
+            tokens.end();
+            tokens.close();
+            System.out.println(builder);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Prefix completion index over the names of all documents in the search index, used for type ahead so that single
+ * word queries do not have to be expanded into wildcard queries over the term dictionary.
+ * <p>
+ * For each document type the lower cased names are kept in a sorted array, each name with the ids of the documents
+ * that have it. Names are also entered from the start of each word in them, as split by
+ * {@link CodeAnalyzer#subWordStarts(String)}. Completing a prefix is a binary search for the start of the prefix range
+ * in each type, then a walk along the range that stops as soon as enough documents have been collected, so the cost
+ * depends on the number of suggestions wanted rather than how many names share the prefix. Types are ranked by
+ * {@link DocumentType#getCompletionWeight()}, which is the order the search box shows completions in.
+ * <p>
+ * The index is written by {@link BuildEnsembleSearchIndex} as an extra file in the lucene index directory, so it is
+ * bundled, cached and versioned along with the index. Names are front coded in the file:
+ * <pre>
+ *   int    VERSION
+ *   vint   number of document types
+ *   per document type:
+ *     string document type name
+ *     vint   weight
+ *     vint   number of names
+ *     per name, in sorted order:
+ *       vint   length of prefix shared with the previous name
+ *       string rest of the name
+ *       vint   number of documents
+ *       vint   document id, delta from the previous id for the name
+ * </pre>
+ */
+public class CompletionIndex {
+    static final String FILE_NAME = "completions.dat";
+    private static final int VERSION = 1;
+    private static final FieldSelector NAME_AND_TYPE = new MapFieldSelector(new String[]{"name", "documentType"});
+
+    private final Map<DocumentType, Completions> completions = new EnumMap<DocumentType, Completions>(DocumentType.class);
+    private final List<DocumentType> typesByWeight = new ArrayList<DocumentType>();
+    private final int[] typeRanks = new int[DocumentType.values().length];
+    private final Comparator<DocumentType> typeOrder = new Comparator<DocumentType>() {
+        @Override public int compare(DocumentType a, DocumentType b) {
+            return typeRanks[a.ordinal()] - typeRanks[b.ordinal()];
+        }
+    };
+
+    private CompletionIndex() {}
+
+    /**
+     * Load the completion index from a search index directory
+     *
+     * @param directory The search index directory
+     * @return The completion index or null if the search index was built without one
+     * @throws IOException If there was a problem reading the completion index
+     */
+    public static CompletionIndex open(Directory directory) throws IOException {
+        if (!directory.fileExists(FILE_NAME)) return null;
+        CompletionIndex index = new CompletionIndex();
+        final Map<DocumentType, Integer> weights = new EnumMap<DocumentType, Integer>(DocumentType.class);
+        IndexInput in = directory.openInput(FILE_NAME);
+        try {
+            if (in.readInt() != VERSION) return null;
+            int typeCount = in.readVInt();
+            for (int t = 0; t < typeCount; t++) {
+                DocumentType documentType = DocumentType.valueOf(in.readString());
+                weights.put(documentType, in.readVInt());
+                int count = in.readVInt();
+                String[] names = new String[count];
+                int[] docStarts = new int[count + 1];
+                int[] docIds = new int[count];
+                int docCount = 0;
+                String previous = "";
+                for (int i = 0; i < count; i++) {
+                    int shared = in.readVInt();
+                    names[i] = previous.substring(0, shared) + in.readString();
+                    previous = names[i];
+                    int nameDocs = in.readVInt();
+                    if (docCount + nameDocs > docIds.length) {
+                        docIds = Arrays.copyOf(docIds, Math.max(docIds.length * 2, docCount + nameDocs));
+                    }
+                    docStarts[i] = docCount;
+                    int docId = 0;
+                    for (int d = 0; d < nameDocs; d++) {
+                        docId += in.readVInt();
+                        docIds[docCount++] = docId;
+                    }
+                }
+                docStarts[count] = docCount;
+                index.completions.put(documentType, new Completions(names, docStarts, Arrays.copyOf(docIds, docCount)));
+            }
+        } finally {
+            in.close();
+        }
+        index.typesByWeight.addAll(weights.keySet());
+        Collections.sort(index.typesByWeight, new Comparator<DocumentType>() {
+            @Override public int compare(DocumentType a, DocumentType b) {
+                int diff = weights.get(b) - weights.get(a);
+                return diff != 0 ? diff : a.compareTo(b);
+            }
+        });
+        // types without any names go last
+        for (DocumentType documentType : DocumentType.values()) {
+            int rank = index.typesByWeight.indexOf(documentType);
+            index.typeRanks[documentType.ordinal()] = rank >= 0 ? rank : index.typesByWeight.size() + documentType.ordinal();
+        }
+        return index;
+    }
+
+    /**
+     * @return The document types that have names, higher weighted types first
+     */
+    public List<DocumentType> getTypesByWeight() {
+        return Collections.unmodifiableList(typesByWeight);
+    }
+
+    /**
+     * @return Comparator putting document types in the same order as {@link #getTypesByWeight()}, for ordering the
+     *         completions of each type
+     */
+    public Comparator<DocumentType> getTypeOrder() {
+        return typeOrder;
+    }
+
+    /**
+     * Complete a prefix for a single document type
+     *
+     * @param documentType The type of documents to complete
+     * @param prefix The prefix typed so far, case is ignored
+     * @param maxDocs The maximum number of documents to return
+     * @return Ids of documents whose name starts with the prefix, in alphabetical order of name so an exact match is
+     *         first
+     */
+    public int[] complete(DocumentType documentType, String prefix, int maxDocs) {
+        Completions typeCompletions = completions.get(documentType);
+        if (typeCompletions == null) return new int[0];
+        return typeCompletions.complete(prefix.toLowerCase(Locale.ENGLISH), maxDocs);
+    }
+
+    /**
+     * Get the best distinct names starting with a prefix across all document types, higher weighted types first
+     *
+     * @param prefix The prefix typed so far, case is ignored
+     * @param maxSuggestions The maximum number of names to return
+     * @return Lower cased names in rank order
+     */
+    public List<String> suggest(String prefix, int maxSuggestions) {
+        String key = prefix.toLowerCase(Locale.ENGLISH);
+        List<String> suggestions = new ArrayList<String>(maxSuggestions);
+        for (DocumentType documentType : typesByWeight) {
+            Completions typeCompletions = completions.get(documentType);
+            for (int i = typeCompletions.firstIndex(key); i < typeCompletions.names.length
+                    && suggestions.size() < maxSuggestions && typeCompletions.names[i].startsWith(key); i++) {
+                if (!suggestions.contains(typeCompletions.names[i])) suggestions.add(typeCompletions.names[i]);
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Collect the completion keys of all the documents in a search index. Must be called after the index writer has
+     * been closed.
+     *
+     * @param directory The search index directory
+     * @return Map of document type to sorted map of lower cased key to the ids of the documents with that key
+     * @throws IOException If there was a problem reading the index
+     */
+    static Map<DocumentType, TreeMap<String, List<Integer>>> collectNames(Directory directory) throws IOException {
+        // collect names and their documents per type, skipping deleted documents
+        Map<DocumentType, TreeMap<String, List<Integer>>> names =
+                new EnumMap<DocumentType, TreeMap<String, List<Integer>>>(DocumentType.class);
+        IndexReader reader = IndexReader.open(directory, true);
+        try {
+            for (int docId = 0; docId < reader.maxDoc(); docId++) {
+                if (reader.isDeleted(docId)) continue;
+                Document document = reader.document(docId, NAME_AND_TYPE);
+                String name = document.get("name");
+                if (name == null || name.length() == 0) continue;
+                DocumentType documentType = DocumentType.valueOf(document.get("documentType"));
+                TreeMap<String, List<Integer>> typeNames = names.get(documentType);
+                if (typeNames == null) {
+                    typeNames = new TreeMap<String, List<Integer>>();
+                    names.put(documentType, typeNames);
+                }
+                // can be completed from the start of any word, "Radio Buttons" from "radio" or "buttons" and
+                // "CubicCurveTo" from "cubic", "curve" or "to"
+                String lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+                int[] starts = CodeAnalyzer.subWordStarts(name);
+                for (int i = -1; i < starts.length; i++) {
+                    String key = lowerCaseName.substring(i < 0 ? 0 : starts[i]);
+                    List<Integer> docIds = typeNames.get(key);
+                    if (docIds == null) {
+                        docIds = new ArrayList<Integer>(1);
+                        typeNames.put(key, docIds);
+                    }
+                    docIds.add(docId);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return names;
+    }
+
+    /**
+     * Write the completion index for a search index into its directory
+     *
+     * @param directory The search index directory
+     * @param names The names in the index from {@link #collectNames(Directory)}
+     * @throws IOException If there was a problem writing the completions
+     */
+    static void write(Directory directory, Map<DocumentType, TreeMap<String, List<Integer>>> names) throws IOException {
+        if (directory.fileExists(FILE_NAME)) directory.deleteFile(FILE_NAME);
+        IndexOutput out = directory.createOutput(FILE_NAME);
+        try {
+            out.writeInt(VERSION);
+            out.writeVInt(names.size());
+            for (Map.Entry<DocumentType, TreeMap<String, List<Integer>>> typeEntry : names.entrySet()) {
+                out.writeString(typeEntry.getKey().toString());
+                out.writeVInt(typeEntry.getKey().getCompletionWeight());
+                out.writeVInt(typeEntry.getValue().size());
+                String previous = "";
+                for (Map.Entry<String, List<Integer>> nameEntry : typeEntry.getValue().entrySet()) {
+                    String name = nameEntry.getKey();
+                    int shared = 0;
+                    int max = Math.min(previous.length(), name.length());
+                    while (shared < max && previous.charAt(shared) == name.charAt(shared)) shared++;
+                    out.writeVInt(shared);
+                    out.writeString(name.substring(shared));
+                    previous = name;
+                    out.writeVInt(nameEntry.getValue().size());
+                    int lastDocId = 0;
+                    for (int docId : nameEntry.getValue()) {
+                        out.writeVInt(docId - lastDocId);
+                        lastDocId = docId;
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Sorted names and their documents for a single document type
+     */
+    private static class Completions {
+        private final String[] names;
+        private final int[] docStarts; // index into docIds of each name's first document, plus one past the end
+        private final int[] docIds;
+
+        private Completions(String[] names, int[] docStarts, int[] docIds) {
+            this.names = names;
+            this.docStarts = docStarts;
+            this.docIds = docIds;
+        }
+
+        /**
+         * Index of the first name that is greater than or equal to key
+         */
+        private int firstIndex(String key) {
+            int index = Arrays.binarySearch(names, key);
+            return index < 0 ? -index - 1 : index;
+        }
+
+        private int[] complete(String prefix, int maxDocs) {
+            int[] result = new int[maxDocs];
+            int count = 0;
+            for (int i = firstIndex(prefix); i < names.length && count < maxDocs && names[i].startsWith(prefix); i++) {
+                for (int d = docStarts[i]; d < docStarts[i + 1] && count < maxDocs; d++) {
+                    // a document can be reached from more than one word of its name
+                    if (!contains(result, count, docIds[d])) result[count++] = docIds[d];
+                }
+            }
+            return count == maxDocs ? result : Arrays.copyOf(result, count);
+        }
+
+        private static boolean contains(int[] docIds, int count, int docId) {
+            for (int i = 0; i < count; i++) {
+                if (docIds[i] == docId) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Simple command line test application, prints suggestions for each prefix of the entered word and how long
+     * completing it took
+     */
+    public static void main(String[] args) throws Exception {
+        Directory directory = CachedIndexDirectory.openIndexDirectory();
+        CompletionIndex index = open(directory);
+        if (index == null) {
+            System.out.println("Search index has no completion index");
+            return;
+        }
+        // warm up
+        for (int i = 0; i < 20000; i++) {
+            for (DocumentType documentType : DocumentType.values()) index.complete(documentType, "set", 5);
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+        while (true) {
+            System.out.println("Enter word: ");
+            String line = in.readLine();
+            if (line == null) break;
+            line = line.trim();
+            if (line.length() == 0) break;
+            for (int length = 1; length <= line.length(); length++) {
+                String prefix = line.substring(0, length);
+                int docs = 0;
+                long start = System.nanoTime();
+                for (DocumentType documentType : DocumentType.values()) {
+                    docs += index.complete(documentType, prefix, 5).length;
+                }
+                long nanos = System.nanoTime() - start;
+                System.out.printf("%-20s %3d docs in %6.1f us  %s%n", prefix, docs, nanos / 1000d, index.suggest(prefix, 5));
+            }
+        }
+        directory.close();
+    }
+}
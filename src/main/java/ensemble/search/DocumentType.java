@@ -42,8 +42,10 @@ public enum DocumentType {
      *      name            : name of the sample
      *      description     : javadoc description (Not Stored)
      *      ensemblePath    : ensemble url
+     *      code            : identifiers in the java source (Not Stored)
+     *      source          : java source, for showing the line that matched code (Not Indexed)
      */
-    SAMPLE("Samples"),
+    SAMPLE("Samples", 6),
     /**
      * Java Class,
      * fields:
@@ -53,7 +55,7 @@ public enum DocumentType {
      *      url             : fully qualified oracle.com url
      *      package         : qualified package
      */
-    CLASS("Classes"),
+    CLASS("Classes", 5),
     /**
      * Single JavaFX Property of a Java Class,
      * fields:
@@ -64,7 +66,7 @@ public enum DocumentType {
      *      className       : non fully qualified
      *      package         : qualified package
      */
-    PROPERTY("Properties"),
+    PROPERTY("Properties", 4),
     /**
      * Single method of a Java Class,
      * fields:
@@ -75,7 +77,7 @@ public enum DocumentType {
      *      className       : non fully qualified
      *      package         : qualified package
      */
-    METHOD("Methods"),
+    METHOD("Methods", 3),
     /**
      * Single field of a Java Class,
      * fields:
@@ -86,7 +88,7 @@ public enum DocumentType {
      *      className       : non fully qualified
      *      package         : qualified package
      */
-    FIELD("Fields"),
+    FIELD("Fields", 1),
     /**
      * Single enum value of a Java Class,
      * fields:
@@ -97,15 +99,24 @@ public enum DocumentType {
      *      className       : non fully qualified
      *      package         : qualified package
      */
-    ENUM("Enums");
+    ENUM("Enums", 2);
 
     private final String pluralDisplayName;
+    private final int completionWeight;
 
-    DocumentType(String pluralDisplayName) {
+    DocumentType(String pluralDisplayName, int completionWeight) {
         this.pluralDisplayName = pluralDisplayName;
+        this.completionWeight = completionWeight;
     }
 
     public String getPluralDisplayName() {
         return pluralDisplayName;
     }
+
+    /**
+     * Rank of this type's names in type ahead suggestions, higher is suggested first
+     */
+    public int getCompletionWeight() {
+        return completionWeight;
+    }
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.store.Directory;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Searches the index of the current docs together with the indexes of other javadoc versions. Each version has its
+ * own index bundle built with "BuildEnsembleSearchIndex -version", the versions available are listed in the
+ * "index-versions.txt" resource along with the url each version's javadoc is published at. The urls of a version's
+ * results point into that version's javadoc.
+ * <p>
+ * A version's index is only opened the first time that version is searched, so nothing is loaded for versions that
+ * are never selected, and a slow first open of one version does not hold up the others. The versions searched default
+ * to the comma separated list in the "ensemble.search.versions" system property. The current docs are searched on the
+ * calling thread while each version is searched in parallel on a shared pool. Results of each type are merged with
+ * those of the current docs first, then those of each version in the order the versions were selected, labelled with
+ * the version they came from.
+ */
+public class FederatedSearcher {
+    static final String VERSIONS_RESOURCE = "index-versions.txt";
+    private static final String VERSIONS_PROPERTY = "ensemble.search.versions";
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Ensemble Federated Search");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static FederatedSearcher instance;
+    private final List<String> versions = new ArrayList<String>();
+    private final Map<String, String> docsUrls = new HashMap<String, String>();
+    private final ConcurrentMap<String, FutureTask<IndexSearcher>> searchers =
+            new ConcurrentHashMap<String, FutureTask<IndexSearcher>>();
+    private volatile List<String> searchedVersions = Collections.emptyList();
+
+    private FederatedSearcher() {
+        loadVersions();
+        String selected = System.getProperty(VERSIONS_PROPERTY);
+        if (selected != null) {
+            List<String> list = new ArrayList<String>();
+            for (String version : selected.split(",")) {
+                if (version.trim().length() > 0) list.add(version.trim());
+            }
+            setSearchedVersions(list);
+        }
+    }
+
+    /**
+     * Get the federated searcher shared by the whole application
+     */
+    public static synchronized FederatedSearcher getInstance() {
+        if (instance == null) instance = new FederatedSearcher();
+        return instance;
+    }
+
+    /**
+     * Read the list of versions that have an index bundle on the classpath and the url of each one's javadoc. Versions
+     * without a url are left out, as their results would have nowhere to link to.
+     */
+    private void loadVersions() {
+        InputStream in = FederatedSearcher.class.getResourceAsStream(VERSIONS_RESOURCE);
+        if (in == null) return;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.trim().split("\\s+");
+                    if (parts.length < 2 || versions.contains(parts[0])
+                            || FederatedSearcher.class.getResource(IndexBundle.resourceName(parts[0])) == null) {
+                        continue;
+                    }
+                    versions.add(parts[0]);
+                    docsUrls.put(parts[0], parts[1].endsWith("/") ? parts[1] : parts[1] + '/');
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return The javadoc versions that have an index that can be searched, apart from the current docs
+     */
+    public List<String> getVersions() {
+        return Collections.unmodifiableList(versions);
+    }
+
+    /**
+     * Get the url of the javadoc of a version
+     *
+     * @param version A version from {@link #getVersions()}
+     * @return The url of the javadoc root directory ending with '/', or null if the version is not known
+     */
+    public String getDocsUrl(String version) {
+        return docsUrls.get(version);
+    }
+
+    /**
+     * Point the url of a result found in a version's index into that version's javadoc. Javadoc urls are indexed
+     * relative to {@link BuildEnsembleSearchIndex#DOCS_BASE_URL} whichever version they came from.
+     */
+    private String versionUrl(String url, String version) {
+        if (url == null || !url.startsWith(BuildEnsembleSearchIndex.DOCS_BASE_URL)) return url;
+        return docsUrls.get(version) + url.substring(BuildEnsembleSearchIndex.DOCS_BASE_URL.length());
+    }
+
+    /**
+     * Set the javadoc versions searched along with the current docs, versions without an index are ignored
+     *
+     * @param selected The versions to search in the order their results are shown, empty for the current docs only
+     */
+    public void setSearchedVersions(List<String> selected) {
+        List<String> list = new ArrayList<String>();
+        for (String version : selected) {
+            if (versions.contains(version) && !list.contains(version)) list.add(version);
+        }
+        searchedVersions = Collections.unmodifiableList(list);
+    }
+
+    public List<String> getSearchedVersions() {
+        return searchedVersions;
+    }
+
+    /**
+     * Get the searcher for a javadoc version, opening its index the first time. Only searches of the same version wait
+     * for it to be opened, other versions are opened at the same time. An index that failed to open is tried again by
+     * the next search.
+     */
+    private IndexSearcher getSearcher(final String version) throws InterruptedException, ExecutionException {
+        FutureTask<IndexSearcher> searcher = searchers.get(version);
+        if (searcher == null) {
+            FutureTask<IndexSearcher> opener = new FutureTask<IndexSearcher>(new Callable<IndexSearcher>() {
+                @Override public IndexSearcher call() throws IOException {
+                    Directory directory = CachedIndexDirectory.openIndexDirectory(IndexBundle.resourceName(version));
+                    return IndexSearcher.open(directory, IndexSearcher.DEFAULT_CACHE_SIZE);
+                }
+            });
+            searcher = searchers.putIfAbsent(version, opener);
+            if (searcher == null) {
+                searcher = opener;
+                opener.run();
+            }
+        }
+        try {
+            return searcher.get();
+        } catch (ExecutionException e) {
+            searchers.remove(version, searcher);
+            throw e;
+        }
+    }
+
+    /**
+     * Search the current docs and the searched versions, may be called from any thread
+     *
+     * @param searchString The query as typed by the user
+     * @return Map of document type to the results of that type from all the indexes searched
+     * @throws ParseException If the query could not be parsed
+     * @throws InterruptedException If interrupted while waiting for the shared searcher or the version searches
+     */
+    public Map<DocumentType, List<SearchResult>> search(final String searchString)
+            throws ParseException, InterruptedException {
+        List<String> selected = searchedVersions;
+        if (selected.isEmpty()) return SearchService.getIndexSearcher().search(searchString);
+        List<Future<Map<DocumentType, List<SearchResult>>>> futures =
+                new ArrayList<Future<Map<DocumentType, List<SearchResult>>>>(selected.size());
+        for (final String version : selected) {
+            futures.add(EXECUTOR.submit(new Callable<Map<DocumentType, List<SearchResult>>>() {
+                @Override public Map<DocumentType, List<SearchResult>> call() throws Exception {
+                    return getSearcher(version).search(searchString);
+                }
+            }));
+        }
+        try {
+            Map<DocumentType, List<SearchResult>> currentResults = SearchService.getIndexSearcher().search(searchString);
+            // keep the types in the order of the current results, completions are ordered by weight
+            Comparator<? super DocumentType> typeOrder = currentResults instanceof SortedMap
+                    ? ((SortedMap<DocumentType, List<SearchResult>>) currentResults).comparator() : null;
+            Map<DocumentType, List<SearchResult>> resultMap = new TreeMap<DocumentType, List<SearchResult>>(typeOrder);
+            for (Map.Entry<DocumentType, List<SearchResult>> entry : currentResults.entrySet()) {
+                resultMap.put(entry.getKey(), new ArrayList<SearchResult>(entry.getValue()));
+            }
+            for (int i = 0; i < selected.size(); i++) {
+                Map<DocumentType, List<SearchResult>> versionResults;
+                try {
+                    versionResults = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof ParseException) throw (ParseException) e.getCause();
+                    // a broken version index should not stop the others from being shown
+                    e.getCause().printStackTrace();
+                    continue;
+                }
+                for (Map.Entry<DocumentType, List<SearchResult>> entry : versionResults.entrySet()) {
+                    List<SearchResult> results = resultMap.get(entry.getKey());
+                    if (results == null) {
+                        results = new ArrayList<SearchResult>();
+                        resultMap.put(entry.getKey(), results);
+                    }
+                    for (SearchResult result : entry.getValue()) {
+                        results.add(new SearchResult(result.getDocumentType(), result.getName(),
+                                versionUrl(result.getUrl(), selected.get(i)),
+                                result.getClassName(), result.getPackageName(), result.getEnsemblePath(),
+                                result.getShortDescription(), selected.get(i)));
+                    }
+                }
+            }
+            return resultMap;
+        } finally {
+            // never interrupt, the first search of a version opens its index and an interrupt would close the channels
+            // it is reading with ClosedByInterruptException
+            for (Future<Map<DocumentType, List<SearchResult>>> future : futures) future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes the single file bundle that the search index is shipped as. All the index files are packed into
+ * one "index.bundle" resource next to this class so that loading the index needs a single classpath lookup. Indexes
+ * of other javadoc versions are bundled the same way as "index-&lt;version&gt;.bundle".
+ * <p>
+ * Format, all numbers big endian:
+ * <pre>
+ *   int    MAGIC
+ *   int    VERSION
+ *   long   CRC32 checksum of all uncompressed file data, used as a version key for the index
+ *   int    number of files
+ *   per file, the file table:
+ *     UTF  file name
+ *     long uncompressed length
+ *   data section, each file's data in the same order as the table, read sequentially:
+ *     per block of up to BLOCK_SIZE uncompressed bytes:
+ *       int  uncompressed length of block
+ *       int  stored length of block, if equal to uncompressed length the block is stored as is else it is deflated
+ *       byte[stored length]
+ * </pre>
+ */
+public class IndexBundle {
+    static final String RESOURCE_NAME = "index.bundle";
+    private static final int MAGIC = 0x454E5342; // "ENSB"
+    private static final int VERSION = 2;
+    private static final int BLOCK_SIZE = 64*1024;
+    private final DataInputStream in;
+    private final long checksum;
+    private final List<Entry> entries;
+    private final byte[] blockBuffer = new byte[BLOCK_SIZE];
+    private final Inflater inflater = new Inflater();
+    private int nextEntry = 0;
+
+    /**
+     * A file in the bundle
+     */
+    public static class Entry {
+        private final String name;
+        private final long length;
+
+        private Entry(String name, long length) {
+            this.name = name;
+            this.length = length;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Get the name of the bundle resource for the index of a javadoc version
+     *
+     * @param docsVersion The javadoc version, or null for the index of the current docs
+     * @return The resource name relative to this class
+     */
+    static String resourceName(String docsVersion) {
+        return docsVersion == null ? RESOURCE_NAME : "index-" + docsVersion + ".bundle";
+    }
+
+    /**
+     * Open the index bundle on the classpath, reading its file table
+     *
+     * @return The opened bundle positioned at the first file
+     * @throws IOException If the bundle is missing or corrupt
+     */
+    public static IndexBundle open() throws IOException {
+        return open(RESOURCE_NAME);
+    }
+
+    /**
+     * Open a named index bundle on the classpath, reading its file table
+     *
+     * @param resourceName The bundle resource name relative to this class
+     * @return The opened bundle positioned at the first file
+     * @throws IOException If the bundle is missing or corrupt
+     */
+    public static IndexBundle open(String resourceName) throws IOException {
+        InputStream in = IndexBundle.class.getResourceAsStream(resourceName);
+        if (in == null) throw new IOException("Missing search index resource [" + resourceName + "]");
+        return new IndexBundle(in);
+    }
+
+    public IndexBundle(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in, BLOCK_SIZE));
+        if (this.in.readInt() != MAGIC) throw new IOException("Not a search index bundle");
+        int version = this.in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported search index bundle version " + version);
+        checksum = this.in.readLong();
+        int count = this.in.readInt();
+        List<Entry> entryList = new ArrayList<Entry>(count);
+        for (int i = 0; i < count; i++) {
+            entryList.add(new Entry(this.in.readUTF(), this.in.readLong()));
+        }
+        entries = Collections.unmodifiableList(entryList);
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Read the next file in the bundle fully into memory
+     *
+     * @return The uncompressed file data
+     * @throws IOException If there are no more files or the bundle is corrupt
+     */
+    public byte[] readNextFile() throws IOException {
+        final Entry entry = nextEntry();
+        final byte[] data = new byte[(int)entry.getLength()];
+        readBlocks(entry, new OutputStream() {
+            private int offset = 0;
+            @Override public void write(int b) throws IOException { data[offset++] = (byte)b; }
+            @Override public void write(byte[] b, int off, int len) throws IOException {
+                System.arraycopy(b, off, data, offset, len);
+                offset += len;
+            }
+        });
+        return data;
+    }
+
+    /**
+     * Copy the next file in the bundle to a stream
+     *
+     * @param out The stream to write the uncompressed file data to
+     * @throws IOException If there are no more files or the bundle is corrupt
+     */
+    public void copyNextFile(OutputStream out) throws IOException {
+        readBlocks(nextEntry(), out);
+    }
+
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    private Entry nextEntry() throws IOException {
+        if (nextEntry >= entries.size()) throw new EOFException("No more files in search index bundle");
+        return entries.get(nextEntry++);
+    }
+
+    private void readBlocks(Entry entry, OutputStream out) throws IOException {
+        long remaining = entry.getLength();
+        byte[] stored = new byte[0];
+        while (remaining > 0) {
+            int rawLength = in.readInt();
+            int storedLength = in.readInt();
+            if (rawLength > BLOCK_SIZE || rawLength > remaining) throw new IOException("Corrupt block in [" + entry.getName() + "]");
+            if (storedLength == rawLength) {
+                in.readFully(blockBuffer, 0, rawLength);
+            } else {
+                if (stored.length < storedLength) stored = new byte[storedLength];
+                in.readFully(stored, 0, storedLength);
+                inflater.reset();
+                inflater.setInput(stored, 0, storedLength);
+                try {
+                    int inflated = 0;
+                    while (inflated < rawLength && !inflater.finished()) {
+                        int count = inflater.inflate(blockBuffer, inflated, rawLength - inflated);
+                        // a truncated block leaves the inflater wanting more input than it was given
+                        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                        inflated += count;
+                    }
+                    if (inflated != rawLength) throw new IOException("Corrupt block in [" + entry.getName() + "]");
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt block in [" + entry.getName() + "]: " + e.getMessage());
+                }
+            }
+            out.write(blockBuffer, 0, rawLength);
+            remaining -= rawLength;
+        }
+    }
+
+    /**
+     * Pack all the files of a lucene directory into a bundle file
+     *
+     * @param directory  The directory containing the index
+     * @param bundleFile The bundle file to write
+     * @param compress   When true deflate each block of data, blocks that do not get smaller are stored as is
+     * @throws IOException If there was a problem reading the index or writing the bundle
+     */
+    public static void write(Directory directory, File bundleFile, boolean compress) throws IOException {
+        String[] fileNames = directory.listAll();
+        Arrays.sort(fileNames);
+        List<String> names = new ArrayList<String>();
+        List<byte[]> storedData = new ArrayList<byte[]>();
+        List<Long> lengths = new ArrayList<Long>();
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        byte[] deflateBuffer = new byte[BLOCK_SIZE + BLOCK_SIZE/2];
+        for (String fileName : fileNames) {
+            if ("write.lock".equals(fileName)) continue;
+            // read whole file
+            IndexInput input = directory.openInput(fileName);
+            byte[] raw = new byte[(int)input.length()];
+            input.readBytes(raw, 0, raw.length);
+            input.close();
+            crc.update(raw);
+            // split into blocks
+            ByteArrayOutputStream stored = new ByteArrayOutputStream();
+            DataOutputStream storedOut = new DataOutputStream(stored);
+            for (int offset = 0; offset < raw.length; offset += BLOCK_SIZE) {
+                int rawLength = Math.min(BLOCK_SIZE, raw.length - offset);
+                int storedLength = rawLength;
+                if (compress) {
+                    deflater.reset();
+                    deflater.setInput(raw, offset, rawLength);
+                    deflater.finish();
+                    int deflated = 0;
+                    while (!deflater.finished() && deflated < deflateBuffer.length) {
+                        deflated += deflater.deflate(deflateBuffer, deflated, deflateBuffer.length - deflated);
+                    }
+                    if (deflater.finished() && deflated < rawLength) storedLength = deflated;
+                }
+                storedOut.writeInt(rawLength);
+                storedOut.writeInt(storedLength);
+                if (storedLength == rawLength) {
+                    storedOut.write(raw, offset, rawLength);
+                } else {
+                    storedOut.write(deflateBuffer, 0, storedLength);
+                }
+            }
+            storedOut.flush();
+            names.add(fileName);
+            lengths.add((long)raw.length);
+            storedData.add(stored.toByteArray());
+        }
+        deflater.end();
+        // write header, file table and data
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bundleFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(crc.getValue());
+            out.writeInt(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                out.writeUTF(names.get(i));
+                out.writeLong(lengths.get(i));
+            }
+            for (byte[] data : storedData) out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
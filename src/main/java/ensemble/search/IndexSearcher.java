@@ -32,27 +32,91 @@
 package ensemble.search;
 
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.queryParser.MultiFieldQueryParser;
 import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.grouping.GroupDocs;
 import org.apache.lucene.search.grouping.SearchGroup;
 import org.apache.lucene.search.grouping.SecondPassGroupingCollector;
 import org.apache.lucene.search.grouping.TopGroups;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Version;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 /**
- * Class for searching the index
+ * Class for searching the index. Single word queries are answered as type ahead from the {@link CompletionIndex},
+ * with the document types in the order of their completion weight, anything else is parsed as a lucene query over names
+ * and descriptions. If no name starts with a single word it is expanded as a wildcard over names and descriptions, and
+ * if that finds nothing too it is assumed to be misspelt and the closest names are looked up in the
+ * {@link NameTrigramIndex}.
+ * <p>
+ * Results of recent queries are kept in a {@link QueryCache}. As the user types a word one letter at a time the
+ * completions for each prefix are narrowed from those of the prefix before, only document types that had more
+ * matches than were returned need to be completed again.
+ * <p>
+ * The fields shown for each result are read from the stored documents. With the system property
+ * "ensemble.search.resultStore" set to true they are read from a {@link ResultStore} loaded when the searcher is opened
+ * instead, which builds results a little faster but holds all the result fields on the heap and takes a while to load.
+ * <p>
+ * When there are fewer than 5 samples, samples whose source code uses what was searched for are added after them.
+ * Their description is the line of source that matched. A single word is matched as the prefix of an identifier.
+ * <p>
+ * Full queries run as one grouped search. With the system property "ensemble.search.parallel" set to true, on machines
+ * with more than one core, they search each document type concurrently instead, as a top 5 search filtered to the type
+ * on a shared pool sized to the number of cores. That is off by default as it has not been measured to be faster.
+ * <p>
+ * A searcher is safe to use from any number of threads at once. The lucene searcher, the completion, trigram and
+ * result indexes are shared and only read after construction, the query cache is synchronized and each thread parses
+ * queries with its own query parser. {@link SearchService#getIndexSearcher()} gives the searcher shared by the whole
+ * application.
+ * <p>
+ * When the shared searcher is replaced by one over a newer index the old one is closed. Searches already running on it
+ * finish first, searches started after it was closed fail with an {@link AlreadyClosedException}.
  */
 public class IndexSearcher {
+    static final int DEFAULT_CACHE_SIZE = 64;
+    static final String RESULT_STORE_PROPERTY = "ensemble.search.resultStore";
+    static final String PARALLEL_PROPERTY = "ensemble.search.parallel";
+    static final String SOURCE_FIELD = "source";
+    private static final FieldSelector SOURCE_FIELD_SELECTOR = new MapFieldSelector(SOURCE_FIELD);
+    // the stored fields a search result is made from, loading a whole document would read the sample source too
+    static final FieldSelector RESULT_FIELD_SELECTOR = new MapFieldSelector("documentType", "name", "url", "className",
+            "package", "ensemblePath", "shortDescription");
+    private static final int MAX_RESULTS_PER_TYPE = 5;
+    // shorter prefixes match too many identifiers to be useful
+    private static final int MIN_CODE_PREFIX = 3;
+    private static final int MAX_LINE_LENGTH = 160;
+    private static final Pattern WORD = Pattern.compile("\\w+");
+    private static final int GROUP_SEARCH_THREADS =
+            Math.min(Runtime.getRuntime().availableProcessors(), DocumentType.values().length);
+    private static ExecutorService groupSearchExecutor;
     private final static List<SearchGroup> searchGroups = new ArrayList<SearchGroup>();
     static {
         for (DocumentType dt: DocumentType.values()){
@@ -62,43 +126,256 @@ public class IndexSearcher {
             searchGroups.add(searchGroup);
         }
     }
-    private org.apache.lucene.search.IndexSearcher searcher;
+    private final org.apache.lucene.search.IndexSearcher searcher;
     private final Analyzer analyzer;
-    private final MultiFieldQueryParser parser;
+    // query parsers are not thread safe, so each thread gets its own
+    private final ThreadLocal<MultiFieldQueryParser> parsers = new ThreadLocal<MultiFieldQueryParser>() {
+        @Override protected MultiFieldQueryParser initialValue() {
+            return new MultiFieldQueryParser(Version.LUCENE_31, new String[]{"name","description"}, analyzer);
+        }
+    };
+    private final ThreadLocal<QueryParser> codeParsers = new ThreadLocal<QueryParser>() {
+        @Override protected QueryParser initialValue() {
+            return new QueryParser(Version.LUCENE_31, SourceCodeAnalyzer.SOURCE_CODE_FIELD, analyzer);
+        }
+    };
+    private final CompletionIndex completionIndex;
+    private final NameTrigramIndex trigramIndex;
+    private final ResultStore resultStore;
+    private final QueryCache queryCache;
+    private final Map<DocumentType, Filter> typeFilters = new EnumMap<DocumentType, Filter>(DocumentType.class);
+    private volatile boolean parallel = GROUP_SEARCH_THREADS > 1 && Boolean.getBoolean(PARALLEL_PROPERTY);
+    private final Directory directory;
+    private final IOException openFailure;
+    // one reference for being open plus one for each search in progress
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     public IndexSearcher() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize The number of recent queries to cache results for, 0 for none
+     */
+    public IndexSearcher(int cacheSize) {
+        this(CachedIndexDirectory.openIndexDirectory(), cacheSize);
+    }
+
+    /**
+     * @param directory The search index directory, closed when this searcher is closed
+     * @param cacheSize The number of recent queries to cache results for, 0 for none
+     */
+    public IndexSearcher(Directory directory, int cacheSize) {
+        this.directory = directory;
+        queryCache = new QueryCache(cacheSize);
+        org.apache.lucene.search.IndexSearcher luceneSearcher = null;
+        CompletionIndex completions = null;
+        NameTrigramIndex trigrams = null;
+        ResultStore results = null;
+        IOException failure = null;
         try {
-            searcher = new org.apache.lucene.search.IndexSearcher(new ClasspathDirectory());
+            luceneSearcher = new org.apache.lucene.search.IndexSearcher(directory);
+            completions = CompletionIndex.open(directory);
+            trigrams = NameTrigramIndex.open(directory);
+            if (Boolean.getBoolean(RESULT_STORE_PROPERTY)) results = ResultStore.load(luceneSearcher.getIndexReader());
         } catch (IOException e) {
             e.printStackTrace();
+            failure = e;
+        }
+        openFailure = failure;
+        searcher = luceneSearcher;
+        completionIndex = completions;
+        trigramIndex = trigrams;
+        resultStore = results;
+        analyzer = CodeAnalyzer.create(Version.LUCENE_31, false);
+        for (DocumentType docType : DocumentType.values()) {
+            typeFilters.put(docType, new CachingWrapperFilter(new QueryWrapperFilter(
+                    new TermQuery(new Term("documentType", docType.toString())))));
         }
-        analyzer = new StandardAnalyzer(Version.LUCENE_31);
-        parser = new MultiFieldQueryParser(Version.LUCENE_31, new String[]{"name","description"}, analyzer);
     }
 
+    /**
+     * Open a searcher that must have an index to search. The constructors leave a searcher whose index could not be
+     * opened without one, this closes it and throws instead, so a failed open is never mistaken for a working one.
+     *
+     * @param directory The search index directory, closed when the searcher is closed or fails to open
+     * @param cacheSize The number of recent queries to cache results for, 0 for none
+     * @return The searcher
+     * @throws IOException If the index could not be opened
+     */
+    static IndexSearcher open(Directory directory, int cacheSize) throws IOException {
+        IndexSearcher indexSearcher = new IndexSearcher(directory, cacheSize);
+        if (indexSearcher.openFailure != null) {
+            indexSearcher.close();
+            throw indexSearcher.openFailure;
+        }
+        return indexSearcher;
+    }
+
+    /**
+     * Pool shared by all searchers for searching document types concurrently
+     */
+    private static synchronized ExecutorService getGroupSearchExecutor() {
+        if (groupSearchExecutor == null) {
+            groupSearchExecutor = Executors.newFixedThreadPool(GROUP_SEARCH_THREADS, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                @Override public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Ensemble Group Search " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return groupSearchExecutor;
+    }
+
+    /**
+     * Set whether full queries search each document type concurrently, defaults to the "ensemble.search.parallel"
+     * system property on machines with more than one core
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Close the searcher and its directory once any searches in progress have finished
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) decRef();
+    }
+
+    private boolean tryIncRef() {
+        int count;
+        while ((count = refCount.get()) > 0) {
+            if (refCount.compareAndSet(count, count + 1)) return true;
+        }
+        return false;
+    }
+
+    private void decRef() {
+        if (refCount.decrementAndGet() > 0) return;
+        try {
+            if (searcher != null) searcher.close();
+            directory.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Search the index, may be called from any thread
+     *
+     * @param searchString The query as typed by the user
+     * @return Map of document type to the top results of that type
+     * @throws ParseException If the query could not be parsed
+     * @throws AlreadyClosedException If the searcher has been closed
+     */
     public Map<DocumentType, List<SearchResult>> search(String searchString) throws ParseException {
+        if (!tryIncRef()) throw new AlreadyClosedException("this IndexSearcher is closed");
+        try {
+            return searchOpenIndex(searchString);
+        } finally {
+            decRef();
+        }
+    }
+
+    private Map<DocumentType, List<SearchResult>> searchOpenIndex(String searchString) throws ParseException {
+        long start = System.nanoTime();
+        String key = QueryCache.normalize(searchString);
+        boolean word = WORD.matcher(key).matches();
+        // completions are not case sensitive
+        if (word) key = key.toLowerCase(Locale.ENGLISH);
+        QueryCache.Entry cached = queryCache.get(key);
+        if (cached != null) {
+            queryCache.recordHit(System.nanoTime() - start);
+            return cached.getResults();
+        }
+        Map<DocumentType, List<SearchResult>> resultMap;
+        boolean narrowable = false;
+        boolean narrowed = false;
+        if (word && completionIndex != null) {
+            // type ahead, narrowing the results of the last prefix if we have them
+            QueryCache.Entry prefixEntry = queryCache.findNarrowable(key);
+            narrowed = prefixEntry != null;
+            resultMap = narrowed ? narrow(prefixEntry.getResults(), key) : complete(key);
+            narrowable = true;
+            if (isEmpty(resultMap)) {
+                // no name starts with the word, look for it in descriptions as well
+                resultMap = query(key + "*");
+                narrowable = false;
+            }
+        } else if (word) {
+            // without a completion index fall back to expanding the word as a wildcard
+            resultMap = query(key + "*");
+        } else {
+            resultMap = query(key);
+        }
+        if (word && isEmpty(resultMap) && trigramIndex != null) {
+            resultMap = correct(key);
+            narrowable = false;
+        }
+        addCodeMatches(resultMap, key, word);
+        // results of a cancelled search may be incomplete
+        if (Thread.currentThread().isInterrupted()) return resultMap;
+        queryCache.put(key, resultMap, narrowable);
+        if (narrowed) {
+            queryCache.recordNarrowed(System.nanoTime() - start);
+        } else {
+            queryCache.recordMiss(System.nanoTime() - start);
+        }
+        return resultMap;
+    }
+
+    /**
+     * Search each document type once through its filter, so the cached filter of every type is built before the first
+     * query needs it
+     */
+    void primeTypeFilters() throws IOException {
+        if (searcher == null || !tryIncRef()) return;
+        try {
+            for (DocumentType docType : DocumentType.values()) {
+                searcher.search(new MatchAllDocsQuery(), typeFilters.get(docType), 1);
+            }
+        } finally {
+            decRef();
+        }
+    }
+
+    private static boolean isEmpty(Map<DocumentType, List<SearchResult>> resultMap) {
+        for (List<SearchResult> results : resultMap.values()) {
+            if (!results.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    private Map<DocumentType, List<SearchResult>> query(String searchString) throws ParseException {
+        Query query = parsers.get().parse(searchString);
+        return parallel ? queryTypesInParallel(query) : queryGrouped(query);
+    }
+
+    private Map<DocumentType, List<SearchResult>> queryGrouped(Query query) {
         Map<DocumentType, List<SearchResult>> resultMap = new TreeMap<DocumentType, List<SearchResult>>();
         try {
-            Query query = parser.parse(searchString);
             final SecondPassGroupingCollector collector = new SecondPassGroupingCollector("documentType", searchGroups,
-                    Sort.RELEVANCE, null, 5, true, false, true);
+                    Sort.RELEVANCE, null, MAX_RESULTS_PER_TYPE, true, false, true);
             searcher.search(query, collector);
             final TopGroups groups = collector.getTopGroups(0);
             for (GroupDocs groupDocs : groups.groups) {
                 DocumentType docType = DocumentType.valueOf(groupDocs.groupValue);
                 List<SearchResult> results = new ArrayList<SearchResult>();
                 for (ScoreDoc scoreDoc : groupDocs.scoreDocs) {
-                    Document doc = searcher.doc(scoreDoc.doc);
-                    SearchResult result = new SearchResult(
-                            docType,
-                            doc.get("name"),
-                            doc.get("url"),
-                            doc.get("className"),
-                            doc.get("package"),
-                            doc.get("ensemblePath"),
-                            doc.get("shortDescription")
-                    );
-                    results.add(result);
+                    // stop loading stored fields if a newer query has cancelled this one, results will be discarded
+                    if (Thread.currentThread().isInterrupted()) return resultMap;
+                    results.add(createResult(docType, scoreDoc.doc));
                 }
                 resultMap.put(docType, results);
             }
@@ -109,9 +386,266 @@ public class IndexSearcher {
     }
 
     /**
-     * Simple command line test application
+     * Search each document type on the group search pool and merge the results in type order. If the search of any
+     * type fails the whole search fails, so the results of the other types are never cached as if they were complete.
+     */
+    private Map<DocumentType, List<SearchResult>> queryTypesInParallel(final Query query) {
+        Map<DocumentType, List<SearchResult>> resultMap = new TreeMap<DocumentType, List<SearchResult>>();
+        List<Future<List<SearchResult>>> futures = new ArrayList<Future<List<SearchResult>>>();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        ExecutorService executor = getGroupSearchExecutor();
+        for (final DocumentType docType : DocumentType.values()) {
+            futures.add(executor.submit(new Callable<List<SearchResult>>() {
+                @Override public List<SearchResult> call() throws Exception {
+                    return queryType(query, docType, cancelled);
+                }
+            }));
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                resultMap.put(DocumentType.values()[i], futures.get(i).get());
+            }
+        } catch (InterruptedException e) {
+            // a newer query has cancelled this one, results will be discarded
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException("Failed to search document type", cause);
+        } finally {
+            // pool threads are not interrupted as an interrupted read can close the channel of a shared NIO directory,
+            // searches already running see the flag and stop loading results instead
+            cancelled.set(true);
+            for (Future<List<SearchResult>> future : futures) future.cancel(false);
+        }
+        return resultMap;
+    }
+
+    private List<SearchResult> queryType(Query query, DocumentType docType, AtomicBoolean cancelled) throws IOException {
+        if (cancelled.get()) return Collections.emptyList();
+        TopDocs topDocs = searcher.search(query, typeFilters.get(docType), MAX_RESULTS_PER_TYPE);
+        List<SearchResult> results = new ArrayList<SearchResult>(topDocs.scoreDocs.length);
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            if (cancelled.get()) break;
+            results.add(createResult(docType, scoreDoc.doc));
+        }
+        return results;
+    }
+
+    /**
+     * Find the documents of each type whose name starts with the given word
+     */
+    private Map<DocumentType, List<SearchResult>> complete(String word) {
+        Map<DocumentType, List<SearchResult>> resultMap =
+                new TreeMap<DocumentType, List<SearchResult>>(completionIndex.getTypeOrder());
+        for (DocumentType docType : completionIndex.getTypesByWeight()) {
+            List<SearchResult> results = complete(docType, word);
+            if (!results.isEmpty()) resultMap.put(docType, results);
+        }
+        return resultMap;
+    }
+
+    private List<SearchResult> complete(DocumentType docType, String word) {
+        int[] docIds = completionIndex.complete(docType, word, MAX_RESULTS_PER_TYPE);
+        List<SearchResult> results = new ArrayList<SearchResult>(docIds.length);
+        try {
+            for (int docId : docIds) {
+                if (Thread.currentThread().isInterrupted()) break;
+                results.add(createResult(docType, docId));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return results;
+    }
+
+    /**
+     * Narrow the completions of a shorter prefix to those of a longer one. Where the shorter prefix had fewer results
+     * than the maximum we have all of them and can filter, otherwise the type is completed again.
+     */
+    private Map<DocumentType, List<SearchResult>> narrow(Map<DocumentType, List<SearchResult>> prefixResults, String word) {
+        Map<DocumentType, List<SearchResult>> resultMap =
+                new TreeMap<DocumentType, List<SearchResult>>(completionIndex.getTypeOrder());
+        for (Map.Entry<DocumentType, List<SearchResult>> entry : prefixResults.entrySet()) {
+            List<SearchResult> results;
+            if (entry.getValue().size() < MAX_RESULTS_PER_TYPE) {
+                results = new ArrayList<SearchResult>(entry.getValue().size());
+                for (SearchResult result : entry.getValue()) {
+                    if (completes(result.getName(), word)) results.add(result);
+                }
+            } else {
+                results = complete(entry.getKey(), word);
+            }
+            if (!results.isEmpty()) resultMap.put(entry.getKey(), results);
+        }
+        return resultMap;
+    }
+
+    /**
+     * Check if a lower case word completes to a name, the same way as the completion index does
+     */
+    private static boolean completes(String name, String word) {
+        if (name == null) return false;
+        String lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+        if (lowerCaseName.startsWith(word)) return true;
+        for (int start : CodeAnalyzer.subWordStarts(name)) {
+            if (lowerCaseName.startsWith(word, start)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Find the documents whose names are closest to a misspelt word
+     */
+    private Map<DocumentType, List<SearchResult>> correct(String word) {
+        Map<DocumentType, List<SearchResult>> resultMap = new TreeMap<DocumentType, List<SearchResult>>();
+        try {
+            for (Map.Entry<DocumentType, List<Integer>> entry : trigramIndex.search(word, MAX_RESULTS_PER_TYPE).entrySet()) {
+                List<SearchResult> results = new ArrayList<SearchResult>(entry.getValue().size());
+                for (int docId : entry.getValue()) {
+                    if (Thread.currentThread().isInterrupted()) return resultMap;
+                    results.add(createResult(entry.getKey(), docId));
+                }
+                resultMap.put(entry.getKey(), results);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return resultMap;
+    }
+
+    /**
+     * Add samples whose source code matches the search after those that matched by name or description, each with
+     * the line of source that matched as its description
+     */
+    private void addCodeMatches(Map<DocumentType, List<SearchResult>> resultMap, String searchString, boolean word)
+            throws ParseException {
+        List<SearchResult> samples = resultMap.get(DocumentType.SAMPLE);
+        int found = samples == null ? 0 : samples.size();
+        if (found >= MAX_RESULTS_PER_TYPE || (word && searchString.length() < MIN_CODE_PREFIX)) return;
+        Query query = word ? new PrefixQuery(new Term(SourceCodeAnalyzer.SOURCE_CODE_FIELD, searchString))
+                : codeParsers.get().parse(searchString);
+        try {
+            // ask for enough to still have a full list after skipping the samples we already have
+            TopDocs topDocs = searcher.search(query, typeFilters.get(DocumentType.SAMPLE), MAX_RESULTS_PER_TYPE + found);
+            if (topDocs.scoreDocs.length == 0) return;
+            Set<String> terms = word ? null : codeTerms(query);
+            List<SearchResult> results = new ArrayList<SearchResult>(MAX_RESULTS_PER_TYPE);
+            if (samples != null) results.addAll(samples);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                if (results.size() >= MAX_RESULTS_PER_TYPE || Thread.currentThread().isInterrupted()) break;
+                SearchResult sample = createResult(DocumentType.SAMPLE, scoreDoc.doc);
+                if (contains(results, sample)) continue;
+                String line = matchingLine(scoreDoc.doc, searchString, terms);
+                results.add(new SearchResult(DocumentType.SAMPLE, sample.getName(), sample.getUrl(),
+                        sample.getClassName(), sample.getPackageName(), sample.getEnsemblePath(),
+                        line != null ? line : sample.getShortDescription()));
+            }
+            resultMap.put(DocumentType.SAMPLE, results);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean contains(List<SearchResult> results, SearchResult result) {
+        for (SearchResult other : results) {
+            if (other.getEnsemblePath().equals(result.getEnsemblePath())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the identifiers a parsed code query looks for
+     */
+    private Set<String> codeTerms(Query query) throws IOException {
+        Set<Term> terms = new HashSet<Term>();
+        try {
+            searcher.rewrite(query).extractTerms(terms);
+        } catch (UnsupportedOperationException e) {
+            // wildcards rewrite to constant score queries that do not give their terms, no line is shown for them
+        }
+        Set<String> texts = new HashSet<String>();
+        for (Term term : terms) {
+            if (SourceCodeAnalyzer.SOURCE_CODE_FIELD.equals(term.field())) texts.add(term.text());
+        }
+        return texts;
+    }
+
+    /**
+     * Find the first line of a sample's source that uses a matching identifier, preferring code over imports and
+     * comments. The source is scanned for identifiers the same way as {@link SourceCodeAnalyzer} tokenizes it.
+     *
+     * @param docId The sample document
+     * @param prefix Prefix of the identifiers to match, when terms is null
+     * @param terms The lower case identifiers to match
+     * @return The trimmed line or null if no line matched
+     */
+    private String matchingLine(int docId, String prefix, Set<String> terms) throws IOException {
+        if (terms != null && terms.isEmpty()) return null;
+        String source = searcher.getIndexReader().document(docId, SOURCE_FIELD_SELECTOR).get(SOURCE_FIELD);
+        if (source == null) return null;
+        String firstLine = null;
+        int length = source.length();
+        int start = 0;
+        while (start < length) {
+            if (!Character.isJavaIdentifierPart(source.charAt(start))) {
+                start++;
+                continue;
+            }
+            int end = start + 1;
+            while (end < length && Character.isJavaIdentifierPart(source.charAt(end))) end++;
+            if (matches(source, start, end, prefix, terms)) {
+                int lineStart = source.lastIndexOf('\n', start) + 1;
+                int lineEnd = source.indexOf('\n', end);
+                if (lineEnd < 0) lineEnd = length;
+                String line = source.substring(lineStart, lineEnd).trim();
+                if (line.length() > MAX_LINE_LENGTH) line = line.substring(0, MAX_LINE_LENGTH);
+                if (!line.startsWith("import ") && !line.startsWith("package ") && !line.startsWith("*")
+                        && !line.startsWith("/")) return line;
+                if (firstLine == null) firstLine = line;
+                end = lineEnd;
+            }
+            start = end;
+        }
+        return firstLine;
+    }
+
+    private static boolean matches(String source, int start, int end, String prefix, Set<String> terms) {
+        if (terms == null) return end - start >= prefix.length() && source.regionMatches(true, start, prefix, 0, prefix.length());
+        for (String term : terms) {
+            if (end - start == term.length() && source.regionMatches(true, start, term, 0, term.length())) return true;
+        }
+        return false;
+    }
+
+    private SearchResult createResult(DocumentType docType, int docId) throws IOException {
+        if (resultStore != null) return resultStore.getResult(docId);
+        Document doc = searcher.doc(docId, RESULT_FIELD_SELECTOR);
+        return new SearchResult(
+                docType,
+                doc.get("name"),
+                doc.get("url"),
+                doc.get("className"),
+                doc.get("package"),
+                doc.get("ensemblePath"),
+                doc.get("shortDescription")
+        );
+    }
+
+    /**
+     * Simple command line test application, with -batch runs the headless {@link SearchBenchmark} instead and with
+     * -benchmark compares grouped and parallel searches
      */
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "-benchmark".equals(args[0])) {
+            benchmark();
+            return;
+        }
+        if (args.length > 0 && "-batch".equals(args[0])) {
+            SearchBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
         IndexSearcher indexSearcher = new IndexSearcher();
         while (true) {
@@ -127,4 +661,45 @@ public class IndexSearcher {
             }
         }
     }
+
+    /**
+     * Compare latency of full queries searched as one grouped search and as concurrent searches per type, for short
+     * queries of one or two terms and long queries of many terms
+     */
+    private static void benchmark() throws Exception {
+        String[] shortQueries = {"color picker", "name:rect*", "linear gradient", "translate x", "fade OR scale",
+                "node", "button", "layout pane", "chart", "media player"};
+        String[] longQueries = {
+                "the color of the fill used to paint the inside of the shape",
+                "animation timeline key frame duration interpolator rate cycle count auto reverse",
+                "mouse event handler called when the node is clicked pressed or released",
+                "layout bounds of the node in its parent coordinate space including effects and clip",
+                "font size weight posture family of the text in the label or button control",
+                "opacity visible managed cursor effect blend mode cache hint of a node",
+                "series data of a line area bar or scatter chart and the axis it is plotted on",
+                "media player status volume balance rate current time start stop time"};
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors, " + GROUP_SEARCH_THREADS
+                + " group search threads");
+        IndexSearcher indexSearcher = new IndexSearcher(0);
+        for (boolean parallel : new boolean[]{false, true}) {
+            indexSearcher.setParallel(parallel);
+            for (String[] queries : new String[][]{shortQueries, longQueries}) {
+                // warm up then measure
+                for (int i = 0; i < 20; i++) for (String query : queries) indexSearcher.search(query);
+                long[] latencies = new long[queries.length * 50];
+                int count = 0;
+                for (int i = 0; i < 50; i++) {
+                    for (String query : queries) {
+                        long start = System.nanoTime();
+                        indexSearcher.search(query);
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                }
+                Arrays.sort(latencies);
+                System.out.printf("%-8s %-5s queries: p50 %7.1f us, p99 %7.1f us%n", parallel ? "parallel" : "grouped",
+                        queries == shortQueries ? "short" : "long",
+                        latencies[latencies.length / 2] / 1e3, latencies[latencies.length * 99 / 100] / 1e3);
+            }
+        }
+    }
 }
@@ -0,0 +1,559 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single pass extractor for javadoc class pages. The page is read through a small fixed buffer and tokenized into tags
+ * and text as it streams past, a little state machine picks out the package, class name, class description and the
+ * entries of the property, method, field and enum constant summary tables.
+ * <p>
+ * Text is only kept while it is wanted and is written straight into the description being built, entities are decoded,
+ * tags become a single space and runs of whitespace are collapsed as the characters are read. So memory use is bounded
+ * by the size of the extracted descriptions rather than the size of the page.
+ */
+public class JavaDocExtractor {
+    private static final int EOF = -1;
+    private static final int TEXT = 0;
+    private static final int START_TAG = 1;
+    private static final int END_TAG = 2;
+    private static final int MAX_ATTRIBUTES = 8;
+
+    /** Where we are in the page */
+    private enum State { HEADER, DESCRIPTION, BODY, SUMMARY, TABLE }
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private int pushedBack = EOF;
+    // current tag
+    private final StringBuilder tagName = new StringBuilder();
+    private final StringBuilder[] attributeNames = new StringBuilder[MAX_ATTRIBUTES];
+    private final StringBuilder[] attributeValues = new StringBuilder[MAX_ATTRIBUTES];
+    private int attributeCount;
+    // where text is currently going, null to skip it
+    private StringBuilder text;
+    private final char[] entity = new char[10];
+
+    private JavaDocExtractor(Reader reader) {
+        this.reader = reader;
+        for (int i = 0; i < MAX_ATTRIBUTES; i++) {
+            attributeNames[i] = new StringBuilder();
+            attributeValues[i] = new StringBuilder();
+        }
+    }
+
+    /**
+     * Extract the class and its members from a javadoc class page
+     *
+     * @param reader Reader for the page, it is read to the end but not closed
+     * @return The extracted class or null if the page is not a class, interface or enum page
+     * @throws IOException If there was a problem reading the page
+     */
+    public static ClassDoc extract(Reader reader) throws IOException {
+        return new JavaDocExtractor(reader).extract();
+    }
+
+    private ClassDoc extract() throws IOException {
+        State state = State.HEADER;
+        String packageName = null;
+        String classType = null;
+        String className = null;
+        StringBuilder description = new StringBuilder();
+        ClassDoc classDoc = null;
+        int divDepth = 0;
+        DocumentType summaryType = null;
+        StringBuilder name = new StringBuilder();
+        StringBuilder memberDescription = new StringBuilder();
+        int token;
+        while ((token = next()) != EOF) {
+            if (token == TEXT) continue;
+            switch (state) {
+                case HEADER:
+                    if (token == START_TAG && isTag("div") && attributeEquals("class", "subTitle")) {
+                        packageName = readText("div");
+                    } else if (token == START_TAG && isTag("h2") && attributeEquals("class", "title")) {
+                        // title is of the form "Class Name&lt;T&gt;"
+                        CharSequence title = attribute("title");
+                        if (title == null) break;
+                        String value = title.toString();
+                        int space = value.indexOf(' ');
+                        if (space < 0) break;
+                        String type = value.substring(0, space).toLowerCase();
+                        if (!type.equals("class") && !type.equals("interface") && !type.equals("enum")) break;
+                        int end = space + 1;
+                        while (end < value.length() && value.charAt(end) != '&' && value.charAt(end) != '<') end++;
+                        classType = type;
+                        className = value.substring(space + 1, end).trim();
+                    } else if (token == START_TAG && isTag("div") && attributeEquals("class", "description")) {
+                        if (packageName == null || className == null) return null;
+                        state = State.DESCRIPTION;
+                        divDepth = 1;
+                    }
+                    break;
+                case DESCRIPTION:
+                    if (isTag("div")) {
+                        divDepth += token == START_TAG ? 1 : -1;
+                        if (divDepth == 0) state = State.BODY;
+                    } else if (token == START_TAG && isTag("p") && attributeCount == 0) {
+                        // description runs from the first paragraph to the next closing div
+                        text = description;
+                        skipUntilEndTag("div");
+                        text = null;
+                        state = State.BODY;
+                    }
+                    break;
+                case BODY:
+                    if (token == START_TAG && isTag("h3")) {
+                        String heading = readText("h3");
+                        summaryType = summaryType(heading);
+                        if (summaryType != null) state = State.SUMMARY;
+                    }
+                    break;
+                case SUMMARY:
+                    if (token == START_TAG && isTag("table") && attributeCount > 0) {
+                        state = State.TABLE;
+                        if (classDoc == null) classDoc = new ClassDoc(packageName, classType, className, trim(description));
+                    }
+                    break;
+                case TABLE:
+                    if (token == END_TAG && isTag("table")) {
+                        state = State.BODY;
+                    } else if (token == START_TAG && isTag("a") && attributeCount == 1 && attributeEquals("href", null)) {
+                        // the first plain link in a row is the member, its description is the rest of the cell
+                        name.setLength(0);
+                        text = name;
+                        int end = next();
+                        if (end == TEXT) end = next();
+                        text = null;
+                        if (end == END_TAG && isTag("a")) {
+                            memberDescription.setLength(0);
+                            text = memberDescription;
+                            skipUntilEndTag("td");
+                            text = null;
+                            classDoc.addMember(summaryType, trim(name), trim(memberDescription));
+                        }
+                    }
+                    break;
+            }
+        }
+        if (classDoc == null && packageName != null && className != null) {
+            classDoc = new ClassDoc(packageName, classType, className, trim(description));
+        }
+        return classDoc;
+    }
+
+    private static DocumentType summaryType(String heading) {
+        if ("Property Summary".equals(heading)) return DocumentType.PROPERTY;
+        if ("Method Summary".equals(heading)) return DocumentType.METHOD;
+        if ("Field Summary".equals(heading)) return DocumentType.FIELD;
+        if ("Enum Constant Summary".equals(heading)) return DocumentType.ENUM;
+        return null;
+    }
+
+    private static String trim(StringBuilder builder) {
+        int length = builder.length();
+        if (length > 0 && builder.charAt(length - 1) == ' ') length--;
+        return builder.substring(0, length);
+    }
+
+    /**
+     * Read the text up to the end tag with the given name
+     */
+    private String readText(String endTag) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        text = builder;
+        skipUntilEndTag(endTag);
+        text = null;
+        return trim(builder);
+    }
+
+    private void skipUntilEndTag(String name) throws IOException {
+        int token;
+        while ((token = next()) != EOF) {
+            if (token == END_TAG && isTag(name)) return;
+        }
+    }
+
+    // =================================================================================================================
+    // Tokenizer
+
+    private boolean isTag(String name) {
+        return contentEquals(tagName, name);
+    }
+
+    /**
+     * Check if the current tag has the given attribute with the given value, or any value if value is null
+     */
+    private boolean attributeEquals(String name, String value) {
+        CharSequence attribute = attribute(name);
+        return attribute != null && (value == null || contentEquals(attribute, value));
+    }
+
+    private CharSequence attribute(String name) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (contentEquals(attributeNames[i], name)) return attributeValues[i];
+        }
+        return null;
+    }
+
+    private static boolean contentEquals(CharSequence sequence, String string) {
+        if (sequence.length() != string.length()) return false;
+        for (int i = 0; i < string.length(); i++) {
+            if (sequence.charAt(i) != string.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read the next token, text is written to the current text builder if there is one
+     *
+     * @return TEXT, START_TAG, END_TAG or EOF
+     */
+    private int next() throws IOException {
+        int c = read();
+        if (c == EOF) return EOF;
+        if (c != '<') {
+            // text runs up to the next tag
+            while (c != EOF && c != '<') {
+                if (text != null) {
+                    if (c == '&') {
+                        appendEntity();
+                    } else {
+                        appendText((char) c);
+                    }
+                }
+                c = read();
+            }
+            if (c == '<') unread(c);
+            return TEXT;
+        }
+        // tags become a single space in the text
+        if (text != null) appendText(' ');
+        c = read();
+        if (c == '!' || c == '?') {
+            skipDeclaration();
+            return TEXT;
+        }
+        boolean endTag = c == '/';
+        if (endTag) c = read();
+        tagName.setLength(0);
+        while (c != EOF && c != '>' && c != '/' && !Character.isWhitespace(c)) {
+            tagName.append(Character.toLowerCase((char) c));
+            c = read();
+        }
+        attributeCount = 0;
+        while (c != EOF && c != '>') {
+            if (Character.isWhitespace(c) || c == '/') {
+                c = read();
+                continue;
+            }
+            // attribute name
+            StringBuilder attributeName = attributeCount < MAX_ATTRIBUTES ? attributeNames[attributeCount] : null;
+            StringBuilder attributeValue = attributeCount < MAX_ATTRIBUTES ? attributeValues[attributeCount] : null;
+            if (attributeName != null) {
+                attributeName.setLength(0);
+                attributeValue.setLength(0);
+            }
+            while (c != EOF && c != '>' && c != '=' && !Character.isWhitespace(c)) {
+                if (attributeName != null) attributeName.append(Character.toLowerCase((char) c));
+                c = read();
+            }
+            while (c != EOF && Character.isWhitespace(c)) c = read();
+            if (c == '=') {
+                c = read();
+                while (c != EOF && Character.isWhitespace(c)) c = read();
+                if (c == '"' || c == '\'') {
+                    int quote = c;
+                    c = read();
+                    while (c != EOF && c != quote) {
+                        if (attributeValue != null) attributeValue.append((char) c);
+                        c = read();
+                    }
+                    c = read();
+                } else {
+                    while (c != EOF && c != '>' && !Character.isWhitespace(c)) {
+                        if (attributeValue != null) attributeValue.append((char) c);
+                        c = read();
+                    }
+                }
+            }
+            attributeCount ++;
+        }
+        attributeCount = Math.min(attributeCount, MAX_ATTRIBUTES);
+        if (!endTag && (isTag("script") || isTag("style"))) {
+            // skip raw content
+            StringBuilder saved = text;
+            text = null;
+            skipRawText();
+            text = saved;
+            return TEXT;
+        }
+        return endTag ? END_TAG : START_TAG;
+    }
+
+    /**
+     * Skip a comment, doctype or processing instruction
+     */
+    private void skipDeclaration() throws IOException {
+        int c = read();
+        if (c == '-') {
+            // comment, runs to "-->"
+            int dashes = 0;
+            while ((c = read()) != EOF) {
+                if (c == '>' && dashes >= 2) return;
+                dashes = c == '-' ? dashes + 1 : 0;
+            }
+        } else {
+            while (c != EOF && c != '>') c = read();
+        }
+    }
+
+    /**
+     * Skip the content of a script or style element up to its end tag
+     */
+    private void skipRawText() throws IOException {
+        String name = tagName.toString();
+        int c;
+        while ((c = read()) != EOF) {
+            if (c != '<') continue;
+            c = read();
+            if (c != '/') {
+                unread(c);
+                continue;
+            }
+            int matched = 0;
+            while (matched < name.length() && (c = read()) != EOF && Character.toLowerCase((char) c) == name.charAt(matched)) {
+                matched++;
+            }
+            if (matched == name.length()) {
+                while (c != EOF && c != '>') c = read();
+                return;
+            }
+            if (c == '<') unread(c);
+        }
+    }
+
+    /**
+     * Append a character to the text, collapsing runs of whitespace into a single space and dropping leading space
+     */
+    private void appendText(char c) {
+        if (Character.isWhitespace(c) || c == '\u00A0') {
+            int length = text.length();
+            if (length > 0 && text.charAt(length - 1) != ' ') text.append(' ');
+        } else {
+            text.append(c);
+        }
+    }
+
+    /**
+     * Decode the entity following a '&amp;' into the text, if it is not a known entity it is left as is
+     */
+    private void appendEntity() throws IOException {
+        int length = 0;
+        int c = read();
+        while (length < entity.length && (Character.isLetterOrDigit(c) || (length == 0 && c == '#'))) {
+            entity[length++] = (char) c;
+            c = read();
+        }
+        int decoded = -1;
+        if (c == ';') {
+            decoded = decodeEntity(length);
+        } else {
+            unread(c);
+        }
+        if (decoded >= 0) {
+            appendText((char) decoded);
+        } else {
+            appendText('&');
+            for (int i = 0; i < length; i++) appendText(entity[i]);
+            if (c == ';') appendText(';');
+        }
+    }
+
+    private int decodeEntity(int length) {
+        if (length > 1 && entity[0] == '#') {
+            int radix = 10;
+            int start = 1;
+            if (entity[1] == 'x' || entity[1] == 'X') {
+                radix = 16;
+                start = 2;
+            }
+            int value = 0;
+            for (int i = start; i < length; i++) {
+                int digit = Character.digit(entity[i], radix);
+                if (digit < 0 || value > 0xFFFF) return -1;
+                value = value * radix + digit;
+            }
+            return start < length && value <= 0xFFFF ? value : -1;
+        }
+        if (isEntity(length, "lt")) return '<';
+        if (isEntity(length, "gt")) return '>';
+        if (isEntity(length, "amp")) return '&';
+        if (isEntity(length, "quot")) return '"';
+        if (isEntity(length, "apos")) return '\'';
+        if (isEntity(length, "nbsp")) return ' ';
+        return -1;
+    }
+
+    private boolean isEntity(int length, String name) {
+        if (length != name.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (entity[i] != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != EOF) {
+            int c = pushedBack;
+            pushedBack = EOF;
+            return c;
+        }
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void unread(int c) {
+        pushedBack = c;
+    }
+
+    /**
+     * A class, interface or enum extracted from its javadoc page
+     */
+    public static class ClassDoc {
+        private final String packageName;
+        private final String classType;
+        private final String className;
+        private final String description;
+        private final List<Member> properties = new ArrayList<Member>();
+        private final List<Member> methods = new ArrayList<Member>();
+        private final List<Member> fields = new ArrayList<Member>();
+        private final List<Member> enumConstants = new ArrayList<Member>();
+
+        public ClassDoc(String packageName, String classType, String className, String description) {
+            this.packageName = packageName;
+            this.classType = classType;
+            this.className = className;
+            this.description = description;
+        }
+
+        public String getPackageName() {
+            return packageName;
+        }
+
+        /**
+         * @return One of "class", "interface" or "enum"
+         */
+        public String getClassType() {
+            return classType;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * Add a member
+         *
+         * @param documentType One of PROPERTY, METHOD, FIELD or ENUM
+         * @param name The member's name
+         * @param description The member's description as plain text
+         */
+        public void addMember(DocumentType documentType, String name, String description) {
+            Member member = new Member(documentType, name, description);
+            switch (documentType) {
+                case PROPERTY: properties.add(member); break;
+                case METHOD: methods.add(member); break;
+                case FIELD: fields.add(member); break;
+                case ENUM: enumConstants.add(member); break;
+                default: throw new IllegalArgumentException("Not a member type: " + documentType);
+            }
+        }
+
+        /**
+         * @return All the members, properties first then methods, fields and enum constants
+         */
+        public List<Member> getMembers() {
+            List<Member> members = new ArrayList<Member>(
+                    properties.size() + methods.size() + fields.size() + enumConstants.size());
+            members.addAll(properties);
+            members.addAll(methods);
+            members.addAll(fields);
+            members.addAll(enumConstants);
+            return members;
+        }
+    }
+
+    /**
+     * A property, method, field or enum constant from a summary table
+     */
+    public static class Member {
+        private final DocumentType documentType;
+        private final String name;
+        private final String description;
+
+        public Member(DocumentType documentType, String name, String description) {
+            this.documentType = documentType;
+            this.name = name;
+            this.description = description;
+        }
+
+        public DocumentType getDocumentType() {
+            return documentType;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+}
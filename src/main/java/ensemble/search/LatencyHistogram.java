@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in power of two buckets of microseconds, bucket n counts latencies from 2^n up to 2^(n+1)
+ * microseconds with bucket 0 also holding anything under a microsecond. Recording is lock free so it can be shared
+ * between threads.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 32;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Record a single latency
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(1, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(bucket);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * Get an upper bound for a percentile of the recorded latencies
+     *
+     * @param percentile The percentile between 0 and 100
+     * @return The upper bound in microseconds of the bucket the percentile falls in, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) return 0;
+        long target = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, target)) return 1L << (i + 1);
+        }
+        return 1L << BUCKETS;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+    }
+
+    /**
+     * @return One line per non empty bucket with its range, count and a bar
+     */
+    @Override public String toString() {
+        long count = getCount();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = counts.get(i);
+            if (bucketCount == 0) continue;
+            builder.append(String.format("  %8d - %8d us %7d ", i == 0 ? 0 : 1L << i, 1L << (i + 1), bucketCount));
+            for (int bar = 0; bar < (int) (50 * bucketCount / count); bar++) builder.append('#');
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Version;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a search index of a locally installed javadoc tree up to date, so search results match the docs being
+ * browsed rather than the snapshot the bundled index was built from.
+ * <p>
+ * The local index lives in a directory under the user's home keyed by the docs location. It starts as a copy of the
+ * samples in the bundled index, then the docs directory is polled in the background and class pages that are new or
+ * have changed since the last poll are parsed and replace their old documents. After each update the completion and
+ * trigram indexes are rebuilt and a new searcher is swapped in with {@link SearchService#setIndexSearcher}. Until
+ * then searches carry on being served from the previous searcher, nothing here ever runs on the FX thread.
+ */
+public class LocalDocsIndexer implements Runnable {
+    private static final File INDEX_ROOT = new File(System.getProperty("user.home"), ".ensemble-docs-index");
+    private static final long POLL_SECONDS = 5;
+    private static final String MANIFEST_FILE = "local-docs.manifest";
+    private static final String BUNDLE_KEY = "bundle";
+    private static final String DOC_KEY_PREFIX = "doc:";
+    // single low priority daemon thread, so updates never overlap and never hold up the application or its exit
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Ensemble Local Docs Indexer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+    private static ScheduledFuture<?> watching; // guarded by LocalDocsIndexer.class
+    private static boolean localSearcherInUse; // only accessed on the indexer thread
+    private final File docsDir;
+    private final File indexDir;
+    private String bundleChecksum;
+    private boolean published;
+    private String lastWarning;
+
+    public LocalDocsIndexer(File docsDir) {
+        this.docsDir = docsDir;
+        this.indexDir = new File(INDEX_ROOT, hash(docsDir.getAbsolutePath()));
+    }
+
+    /**
+     * Start keeping the search index in step with the javadoc at the given url, stopping any previous watch. Urls that
+     * are not local directories go back to searching the bundled index. Returns straight away, may be called on any
+     * thread.
+     *
+     * @param docsUrl The url of the javadoc root directory, or null
+     */
+    public static synchronized void watch(String docsUrl) {
+        if (watching != null) {
+            // let an update in progress finish, interrupting would close the index files under the writer
+            watching.cancel(false);
+            watching = null;
+        }
+        File docsDir = null;
+        if (docsUrl != null && docsUrl.startsWith("file:")) {
+            try {
+                docsDir = new File(new URI(docsUrl));
+            } catch (Exception e) {
+                System.err.println("Warning: Can not index local docs at [" + docsUrl + "]: " + e);
+            }
+        }
+        if (docsDir != null) {
+            watching = EXECUTOR.scheduleWithFixedDelay(new LocalDocsIndexer(docsDir), 0, POLL_SECONDS, TimeUnit.SECONDS);
+        } else {
+            EXECUTOR.execute(new Runnable() {
+                @Override public void run() {
+                    if (localSearcherInUse) {
+                        SearchService.setIndexSearcher(new IndexSearcher());
+                        localSearcherInUse = false;
+                    }
+                }
+            });
+        }
+    }
+
+    @Override public void run() {
+        try {
+            update();
+            lastWarning = null;
+        } catch (Exception e) {
+            // keep polling, the docs may be half copied or the directory may come back, but only say so once
+            String warning = "Warning: Failed to index local docs in [" + docsDir + "]: " + e;
+            if (!warning.equals(lastWarning)) System.err.println(warning);
+            lastWarning = warning;
+        }
+    }
+
+    /**
+     * Index any class pages that have been added, changed or removed since the last update and swap in a searcher
+     * over the result if anything changed
+     *
+     * @return The number of pages that were added, changed or removed
+     * @throws IOException If there was a problem reading the docs or writing the index
+     */
+    public int update() throws IOException {
+        List<String> classUrls = BuildEnsembleSearchIndex.findJavaDocClassUrls(docsDir);
+        if (bundleChecksum == null) bundleChecksum = readBundleChecksum();
+        int changes = 0;
+        Directory directory = FSDirectory.open(indexDir);
+        try {
+            // the local index is only good if it was started from the same bundled index we are running with
+            Properties oldManifest = loadManifest();
+            if (!bundleChecksum.equals(oldManifest.getProperty(BUNDLE_KEY)) || !IndexReader.indexExists(directory)) {
+                seed(directory);
+                oldManifest.clear();
+            }
+            Properties manifest = new Properties();
+            manifest.setProperty(BUNDLE_KEY, bundleChecksum);
+            Map<String, File> changedFiles = new LinkedHashMap<String, File>();
+            for (String classUrl : classUrls) {
+                String key = DOC_KEY_PREFIX + classUrl;
+                File file = new File(docsDir, classUrl);
+                // pages are only ever replaced whole, so the time and size are enough to tell if one has changed
+                String stamp = file.lastModified() + "/" + file.length();
+                manifest.setProperty(key, stamp);
+                if (!stamp.equals(oldManifest.getProperty(key))) changedFiles.put(key, file);
+            }
+            List<String> removedKeys = new ArrayList<String>();
+            for (String key : oldManifest.stringPropertyNames()) {
+                if (key.startsWith(DOC_KEY_PREFIX) && !manifest.containsKey(key)) removedKeys.add(key);
+            }
+            changes = changedFiles.size() + removedKeys.size();
+            if (changes > 0) {
+                Analyzer analyzer = CodeAnalyzer.create(Version.LUCENE_31, true);
+                IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_31, analyzer);
+                iwc.setOpenMode(OpenMode.APPEND);
+                IndexWriter writer = new IndexWriter(directory, iwc);
+                try {
+                    for (String key : removedKeys) writer.deleteDocuments(new Term(BuildEnsembleSearchIndex.SOURCE_FILE, key));
+                    for (String key : changedFiles.keySet()) writer.deleteDocuments(new Term(BuildEnsembleSearchIndex.SOURCE_FILE, key));
+                    BuildEnsembleSearchIndex.indexFiles(writer, changedFiles,
+                            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+                    writer.commit();
+                } finally {
+                    writer.close();
+                }
+                Map<DocumentType, TreeMap<String, List<Integer>>> names = CompletionIndex.collectNames(directory);
+                CompletionIndex.write(directory, names);
+                NameTrigramIndex.write(directory, names);
+                // save manifest once the index is complete, so an interrupted update is redone next time
+                saveManifest(manifest);
+            }
+        } finally {
+            directory.close();
+        }
+        if (changes > 0 || !published) {
+            // the searcher gets its own directory as it outlives this update. It is memory mapped like the bundled
+            // index, FSDirectory.open gives an NIOFSDirectory whose shared channel is closed for good when a cancelled
+            // search is interrupted in the middle of a read
+            Directory searchDirectory = new MMapDirectory(indexDir);
+            SearchService.setIndexSearcher(new IndexSearcher(searchDirectory, IndexSearcher.DEFAULT_CACHE_SIZE));
+            published = true;
+            localSearcherInUse = true;
+        }
+        return changes;
+    }
+
+    /**
+     * Start the local index again from a copy of the bundled index with all the javadoc documents removed, leaving
+     * just the samples
+     */
+    private void seed(Directory directory) throws IOException {
+        File[] oldFiles = indexDir.listFiles();
+        if (oldFiles != null) {
+            for (File oldFile : oldFiles) oldFile.delete();
+        }
+        Directory bundled = CachedIndexDirectory.openIndexDirectory();
+        try {
+            for (String file : bundled.listAll()) {
+                if (!file.endsWith(".dat")) bundled.copy(directory, file, file);
+            }
+        } finally {
+            bundled.close();
+        }
+        IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_31, CodeAnalyzer.create(Version.LUCENE_31, true));
+        iwc.setOpenMode(OpenMode.APPEND);
+        IndexWriter writer = new IndexWriter(directory, iwc);
+        try {
+            for (DocumentType documentType : DocumentType.values()) {
+                if (documentType != DocumentType.SAMPLE) {
+                    writer.deleteDocuments(new Term("documentType", documentType.toString()));
+                }
+            }
+            writer.expungeDeletes();
+            writer.commit();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String readBundleChecksum() throws IOException {
+        IndexBundle bundle = IndexBundle.open();
+        try {
+            return Long.toHexString(bundle.getChecksum());
+        } finally {
+            bundle.close();
+        }
+    }
+
+    private Properties loadManifest() throws IOException {
+        Properties manifest = new Properties();
+        File manifestFile = new File(indexDir, MANIFEST_FILE);
+        if (manifestFile.exists()) {
+            FileInputStream in = new FileInputStream(manifestFile);
+            try {
+                manifest.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return manifest;
+    }
+
+    private void saveManifest(Properties manifest) throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(indexDir, MANIFEST_FILE));
+        try {
+            manifest.store(out, "Ensemble local docs index manifest");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String hash(String path) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(path.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) hex.append(String.format("%02x", digest[i]));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Simple command line application that updates the local index of a javadoc directory twice, printing the time
+     * taken for each, then searches it
+     */
+    public static void main(String[] args) throws Exception {
+        LocalDocsIndexer indexer = new LocalDocsIndexer(new File(args[0]));
+        for (int i = 0; i < 2; i++) {
+            long start = System.nanoTime();
+            int changes = indexer.update();
+            System.out.printf("Updated [%s] in %.1f ms, %d pages changed%n", indexer.indexDir, (System.nanoTime() - start) / 1e6,
+                    changes);
+        }
+        for (int i = 1; i < args.length; i++) {
+            System.out.println(args[i] + " -> " + SearchService.getIndexSearcher().search(args[i]));
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Character trigram index over the names of all documents in the search index, for finding names close to a misspelt
+ * query without running a fuzzy query over the whole lucene term dictionary.
+ * <p>
+ * Names are the same lower cased keys as the {@link CompletionIndex}, so every word a name can be completed from is
+ * here too. Each key is broken into trigrams after padding the front with two '$'s, there is no padding at the end as
+ * the query is usually only the start of a word. A lookup counts how many of the query's trigrams each key shares,
+ * takes the keys sharing the most and ranks them by the edit distance between the query and the closest prefix of the
+ * key, so "rectagn" finds "rectangle".
+ * <p>
+ * Written by {@link BuildEnsembleSearchIndex} into the lucene index directory next to the completion index:
+ * <pre>
+ *   int    VERSION
+ *   vint   number of document types, then each type name
+ *   vint   number of keys
+ *   per key, in sorted order:
+ *     string key
+ *     vint   number of documents
+ *     per document: vint index of document type, vint document id
+ *   vint   number of trigrams
+ *   per trigram, in sorted order:
+ *     long   trigram, its three chars packed into the low 48 bits
+ *     vint   number of keys
+ *     vint   key index, delta from the previous key index
+ * </pre>
+ */
+public class NameTrigramIndex {
+    static final String FILE_NAME = "trigrams.dat";
+    private static final int VERSION = 1;
+    /** Most keys that are checked for edit distance per lookup */
+    private static final int MAX_CANDIDATES = 256;
+
+    private final String[] keys;
+    private final int[] docStarts;
+    private final DocumentType[] docTypes;
+    private final int[] docIds;
+    private final long[] trigrams;
+    private final int[] postingStarts;
+    private final int[] postings;
+    // shared trigram counts of every key, one array per thread that is cleared after each lookup rather than allocated
+    private final ThreadLocal<int[]> sharedCounts = new ThreadLocal<int[]>() {
+        @Override protected int[] initialValue() {
+            return new int[keys.length];
+        }
+    };
+
+    private NameTrigramIndex(String[] keys, int[] docStarts, DocumentType[] docTypes, int[] docIds, long[] trigrams,
+                             int[] postingStarts, int[] postings) {
+        this.keys = keys;
+        this.docStarts = docStarts;
+        this.docTypes = docTypes;
+        this.docIds = docIds;
+        this.trigrams = trigrams;
+        this.postingStarts = postingStarts;
+        this.postings = postings;
+    }
+
+    /**
+     * Load the trigram index from a search index directory
+     *
+     * @param directory The search index directory
+     * @return The trigram index or null if the search index was built without one
+     * @throws IOException If there was a problem reading the trigram index
+     */
+    public static NameTrigramIndex open(Directory directory) throws IOException {
+        if (!directory.fileExists(FILE_NAME)) return null;
+        IndexInput in = directory.openInput(FILE_NAME);
+        try {
+            if (in.readInt() != VERSION) return null;
+            DocumentType[] types = new DocumentType[in.readVInt()];
+            for (int i = 0; i < types.length; i++) types[i] = DocumentType.valueOf(in.readString());
+            int keyCount = in.readVInt();
+            String[] keys = new String[keyCount];
+            int[] docStarts = new int[keyCount + 1];
+            List<DocumentType> docTypes = new ArrayList<DocumentType>(keyCount);
+            int[] docIds = new int[keyCount];
+            int docCount = 0;
+            for (int k = 0; k < keyCount; k++) {
+                keys[k] = in.readString();
+                docStarts[k] = docCount;
+                int keyDocs = in.readVInt();
+                for (int d = 0; d < keyDocs; d++) {
+                    docTypes.add(types[in.readVInt()]);
+                    if (docCount == docIds.length) docIds = Arrays.copyOf(docIds, docIds.length * 2);
+                    docIds[docCount++] = in.readVInt();
+                }
+            }
+            docStarts[keyCount] = docCount;
+            int trigramCount = in.readVInt();
+            long[] trigrams = new long[trigramCount];
+            int[] postingStarts = new int[trigramCount + 1];
+            int[] postings = new int[trigramCount * 4];
+            int postingCount = 0;
+            for (int t = 0; t < trigramCount; t++) {
+                trigrams[t] = in.readLong();
+                postingStarts[t] = postingCount;
+                int count = in.readVInt();
+                if (postingCount + count > postings.length) {
+                    postings = Arrays.copyOf(postings, Math.max(postings.length * 2, postingCount + count));
+                }
+                int key = 0;
+                for (int p = 0; p < count; p++) {
+                    key += in.readVInt();
+                    postings[postingCount++] = key;
+                }
+            }
+            postingStarts[trigramCount] = postingCount;
+            return new NameTrigramIndex(keys, docStarts, docTypes.toArray(new DocumentType[docCount]),
+                    Arrays.copyOf(docIds, docCount), trigrams, postingStarts, Arrays.copyOf(postings, postingCount));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Find the documents whose names are closest to a possibly misspelt word
+     *
+     * @param word The word as typed, case is ignored
+     * @param maxDocsPerType The maximum number of documents to return for each type
+     * @return Map of document type to ids of matching documents, closest first
+     */
+    public Map<DocumentType, List<Integer>> search(String word, int maxDocsPerType) {
+        Map<DocumentType, List<Integer>> results = new EnumMap<DocumentType, List<Integer>>(DocumentType.class);
+        String query = word.toLowerCase(Locale.ENGLISH);
+        int maxDistance = maxDistance(query);
+        if (maxDistance == 0) return results;
+        // count shared trigrams for every key that has any
+        long[] queryTrigrams = trigrams(query);
+        int[] shared = sharedCounts.get();
+        int[] touched = new int[64];
+        int touchedCount = 0;
+        for (long trigram : queryTrigrams) {
+            int t = Arrays.binarySearch(trigrams, trigram);
+            if (t < 0) continue;
+            for (int p = postingStarts[t]; p < postingStarts[t + 1]; p++) {
+                int key = postings[p];
+                if (shared[key]++ == 0) {
+                    if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+                    touched[touchedCount++] = key;
+                }
+            }
+        }
+        // each edit can break up to three trigrams
+        int minShared = Math.max(1, queryTrigrams.length - 3 * maxDistance);
+        int candidateCount = 0;
+        long[] candidates = new long[touchedCount];
+        for (int i = 0; i < touchedCount; i++) {
+            int key = touched[i];
+            // sort by most shared trigrams then key order
+            if (shared[key] >= minShared) candidates[candidateCount++] = ((long) (Integer.MAX_VALUE - shared[key]) << 32) | key;
+            shared[key] = 0;
+        }
+        Arrays.sort(candidates, 0, candidateCount);
+        candidateCount = Math.min(candidateCount, MAX_CANDIDATES);
+        // rank the best candidates by edit distance
+        long[] ranked = new long[candidateCount];
+        int rankedCount = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            int key = (int) candidates[i];
+            int distance = prefixDistance(query, keys[key], maxDistance);
+            if (distance <= maxDistance) ranked[rankedCount++] = ((long) distance << 32) | i;
+        }
+        Arrays.sort(ranked, 0, rankedCount);
+        for (int r = 0; r < rankedCount; r++) {
+            int key = (int) candidates[(int) ranked[r]];
+            for (int d = docStarts[key]; d < docStarts[key + 1]; d++) {
+                List<Integer> typeResults = results.get(docTypes[d]);
+                if (typeResults == null) {
+                    typeResults = new ArrayList<Integer>(maxDocsPerType);
+                    results.put(docTypes[d], typeResults);
+                }
+                if (typeResults.size() < maxDocsPerType && !typeResults.contains(docIds[d])) typeResults.add(docIds[d]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Number of typos allowed for a query, none for very short queries as nearly everything would match
+     */
+    private static int maxDistance(String query) {
+        if (query.length() < 3) return 0;
+        if (query.length() < 6) return 1;
+        return 2;
+    }
+
+    /**
+     * Trigrams of a key or query, padded at the front
+     */
+    private static long[] trigrams(String text) {
+        String padded = "$$" + text;
+        TreeSet<Long> set = new TreeSet<Long>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            set.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+        }
+        long[] result = new long[set.size()];
+        int i = 0;
+        for (Long trigram : set) result[i++] = trigram;
+        return result;
+    }
+
+    /**
+     * Levenshtein distance between the query and the closest prefix of the key, stopping early once every prefix is
+     * further than max
+     *
+     * @return The distance or max + 1 if it is more than max
+     */
+    static int prefixDistance(String query, String key, int max) {
+        int[] previous = new int[key.length() + 1];
+        int[] current = new int[key.length() + 1];
+        for (int j = 0; j <= key.length(); j++) previous[j] = j;
+        for (int i = 1; i <= query.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            char q = query.charAt(i - 1);
+            for (int j = 1; j <= key.length(); j++) {
+                int cost = q == key.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) return max + 1;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        int best = max + 1;
+        for (int j = 0; j <= key.length(); j++) best = Math.min(best, previous[j]);
+        return best;
+    }
+
+    /**
+     * Write the trigram index for a search index into its directory
+     *
+     * @param directory The search index directory
+     * @param names The names in the index from {@link CompletionIndex#collectNames(Directory)}
+     * @throws IOException If there was a problem writing the index
+     */
+    static void write(Directory directory, Map<DocumentType, TreeMap<String, List<Integer>>> names) throws IOException {
+        // merge keys of all types, keeping the type of each document
+        TreeMap<String, List<int[]>> keys = new TreeMap<String, List<int[]>>();
+        List<DocumentType> types = new ArrayList<DocumentType>(names.keySet());
+        for (Map.Entry<DocumentType, TreeMap<String, List<Integer>>> typeEntry : names.entrySet()) {
+            int typeIndex = types.indexOf(typeEntry.getKey());
+            for (Map.Entry<String, List<Integer>> keyEntry : typeEntry.getValue().entrySet()) {
+                List<int[]> docs = keys.get(keyEntry.getKey());
+                if (docs == null) {
+                    docs = new ArrayList<int[]>();
+                    keys.put(keyEntry.getKey(), docs);
+                }
+                for (int docId : keyEntry.getValue()) docs.add(new int[]{typeIndex, docId});
+            }
+        }
+        // postings of key indexes for each trigram
+        TreeMap<Long, List<Integer>> trigramPostings = new TreeMap<Long, List<Integer>>();
+        int keyIndex = 0;
+        for (String key : keys.keySet()) {
+            for (long trigram : trigrams(key)) {
+                List<Integer> posting = trigramPostings.get(trigram);
+                if (posting == null) {
+                    posting = new ArrayList<Integer>();
+                    trigramPostings.put(trigram, posting);
+                }
+                posting.add(keyIndex);
+            }
+            keyIndex++;
+        }
+        if (directory.fileExists(FILE_NAME)) directory.deleteFile(FILE_NAME);
+        IndexOutput out = directory.createOutput(FILE_NAME);
+        try {
+            out.writeInt(VERSION);
+            out.writeVInt(types.size());
+            for (DocumentType type : types) out.writeString(type.toString());
+            out.writeVInt(keys.size());
+            for (Map.Entry<String, List<int[]>> keyEntry : keys.entrySet()) {
+                out.writeString(keyEntry.getKey());
+                out.writeVInt(keyEntry.getValue().size());
+                for (int[] doc : keyEntry.getValue()) {
+                    out.writeVInt(doc[0]);
+                    out.writeVInt(doc[1]);
+                }
+            }
+            out.writeVInt(trigramPostings.size());
+            for (Map.Entry<Long, List<Integer>> trigramEntry : trigramPostings.entrySet()) {
+                out.writeLong(trigramEntry.getKey());
+                out.writeVInt(trigramEntry.getValue().size());
+                int lastKey = 0;
+                for (int key : trigramEntry.getValue()) {
+                    out.writeVInt(key - lastKey);
+                    lastKey = key;
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Simple command line test application, prints the closest names for each entered word and how long the lookup
+     * took
+     */
+    public static void main(String[] args) throws Exception {
+        Directory directory = CachedIndexDirectory.openIndexDirectory();
+        NameTrigramIndex index = open(directory);
+        if (index == null) {
+            System.out.println("Search index has no trigram index");
+            return;
+        }
+        org.apache.lucene.search.IndexSearcher searcher = new org.apache.lucene.search.IndexSearcher(directory);
+        // warm up
+        for (int i = 0; i < 2000; i++) index.search("rectagnle", 5);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+        while (true) {
+            System.out.println("Enter word: ");
+            String line = in.readLine();
+            if (line == null) break;
+            line = line.trim();
+            if (line.length() == 0) break;
+            long start = System.nanoTime();
+            Map<DocumentType, List<Integer>> results = index.search(line, 5);
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%d types in %.1f us%n", results.size(), nanos / 1000d);
+            for (Map.Entry<DocumentType, List<Integer>> entry : results.entrySet()) {
+                StringBuilder names = new StringBuilder();
+                for (int docId : entry.getValue()) names.append(' ').append(searcher.doc(docId).get("name"));
+                System.out.println("    " + entry.getKey() + ":" + names);
+            }
+        }
+        searcher.close();
+        directory.close();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded least recently used cache of search results keyed by normalized query, with counters and latency
+ * histograms for queries answered from the cache, narrowed from the cached results of a shorter prefix and run
+ * against the index.
+ * <p>
+ * Entries are marked narrowable when their results are prefix completions, then a longer query typed after them can
+ * be answered by filtering the cached results instead of searching again.
+ */
+public class QueryCache {
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong narrowed = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final LatencyHistogram hitLatency = new LatencyHistogram();
+    private final LatencyHistogram narrowedLatency = new LatencyHistogram();
+    private final LatencyHistogram missLatency = new LatencyHistogram();
+
+    /**
+     * @param capacity The maximum number of queries to keep results for, 0 to disable caching
+     */
+    public QueryCache(final int capacity) {
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Normalize a query for use as a cache key, trimming and collapsing whitespace
+     */
+    public static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ");
+    }
+
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Find the cached entry for the longest strict prefix of a key that can be narrowed
+     *
+     * @param key The normalized query
+     * @return The entry or null if there is none
+     */
+    public synchronized Entry findNarrowable(String key) {
+        for (int length = key.length() - 1; length > 0; length--) {
+            Entry entry = entries.get(key.substring(0, length));
+            if (entry != null && entry.isNarrowable()) return entry;
+        }
+        return null;
+    }
+
+    public synchronized void put(String key, Map<DocumentType, List<SearchResult>> results, boolean narrowable) {
+        entries.put(key, new Entry(results, narrowable));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public void recordHit(long nanos) {
+        hits.incrementAndGet();
+        hitLatency.record(nanos);
+    }
+
+    public void recordNarrowed(long nanos) {
+        narrowed.incrementAndGet();
+        narrowedLatency.record(nanos);
+    }
+
+    public void recordMiss(long nanos) {
+        misses.incrementAndGet();
+        missLatency.record(nanos);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getNarrowed() {
+        return narrowed.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        narrowed.set(0);
+        misses.set(0);
+        hitLatency.reset();
+        narrowedLatency.reset();
+        missLatency.reset();
+    }
+
+    @Override public String toString() {
+        return "hits " + hits + ", narrowed " + narrowed + ", misses " + misses + "\n"
+                + "hit latency:\n" + hitLatency
+                + "narrowed latency:\n" + narrowedLatency
+                + "miss latency:\n" + missLatency;
+    }
+
+    /**
+     * Cached results of a single query
+     */
+    public static class Entry {
+        private final Map<DocumentType, List<SearchResult>> results;
+        private final boolean narrowable;
+
+        private Entry(Map<DocumentType, List<SearchResult>> results, boolean narrowable) {
+            this.results = results;
+            this.narrowable = narrowable;
+        }
+
+        public Map<DocumentType, List<SearchResult>> getResults() {
+            return results;
+        }
+
+        /**
+         * @return True if the results are prefix completions, which a longer prefix can be narrowed from
+         */
+        public boolean isNarrowable() {
+            return narrowable;
+        }
+    }
+
+    /**
+     * Replay the recorded typing sessions in typing-sessions.txt, searching for every prefix of each line as if it
+     * was being typed, without and then with the cache, and print the time taken and the cache statistics.
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> sessions = loadSessions();
+        IndexSearcher uncached = new IndexSearcher(0);
+        IndexSearcher cached = new IndexSearcher(IndexSearcher.DEFAULT_CACHE_SIZE);
+        // warm up both, then measure
+        replay(uncached, sessions);
+        replay(cached, sessions);
+        uncached.getQueryCache().resetStatistics();
+        cached.getQueryCache().clear();
+        cached.getQueryCache().resetStatistics();
+        long uncachedTime = replay(uncached, sessions);
+        long cachedTime = replay(cached, sessions);
+        System.out.printf("Replayed %d sessions%n", sessions.size());
+        System.out.printf("Without cache: %.1f ms, %s%n", uncachedTime / 1e6, uncached.getQueryCache());
+        System.out.printf("With cache   : %.1f ms, %s%n", cachedTime / 1e6, cached.getQueryCache());
+    }
+
+    private static long replay(IndexSearcher searcher, List<String> sessions) throws Exception {
+        long start = System.nanoTime();
+        for (String session : sessions) {
+            for (int length = 1; length <= session.length(); length++) {
+                try {
+                    searcher.search(session.substring(0, length));
+                } catch (org.apache.lucene.queryParser.ParseException e) {
+                    // half typed query, as in the search box
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static List<String> loadSessions() throws IOException {
+        List<String> sessions = new ArrayList<String>();
+        InputStream in = QueryCache.class.getResourceAsStream("typing-sessions.txt");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0 && !line.startsWith("#")) sessions.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return sessions;
+    }
+}
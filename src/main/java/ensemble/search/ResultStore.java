@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryParser.MultiFieldQueryParser;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Version;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column store of the fields shown for search results, loaded once from the stored fields of the index so that
+ * building a result for a hit is a few array lookups rather than reading and decompressing a stored document.
+ * <p>
+ * Each field is a column of dictionary ids indexed by document id. The distinct values of a column are packed as
+ * UTF-8 into a single byte array, so repeated values like package names, class names and the page part of urls are
+ * only kept once and there are no per value object headers. Urls and ensemble paths are split at '#' into a page
+ * column and an anchor column as every member of a class shares its class's page.
+ * <p>
+ * The store is only used by {@link IndexSearcher} when the "ensemble.search.resultStore" system property is true, as it
+ * costs heap and load time for every searcher opened to save microseconds per query.
+ */
+public class ResultStore {
+    private final byte[] documentTypes;
+    private final StringColumn names;
+    private final StringColumn urlPages;
+    private final StringColumn urlAnchors;
+    private final StringColumn classNames;
+    private final StringColumn packageNames;
+    private final StringColumn ensemblePathPages;
+    private final StringColumn ensemblePathAnchors;
+    private final StringColumn shortDescriptions;
+
+    private ResultStore(IndexReader reader) throws IOException {
+        int maxDoc = reader.maxDoc();
+        documentTypes = new byte[maxDoc];
+        StringColumn.Builder nameBuilder = new StringColumn.Builder(maxDoc);
+        StringColumn.Builder urlPageBuilder = new StringColumn.Builder(maxDoc);
+        StringColumn.Builder urlAnchorBuilder = new StringColumn.Builder(maxDoc);
+        StringColumn.Builder classNameBuilder = new StringColumn.Builder(maxDoc);
+        StringColumn.Builder packageNameBuilder = new StringColumn.Builder(maxDoc);
+        StringColumn.Builder ensemblePathPageBuilder = new StringColumn.Builder(maxDoc);
+        StringColumn.Builder ensemblePathAnchorBuilder = new StringColumn.Builder(maxDoc);
+        StringColumn.Builder shortDescriptionBuilder = new StringColumn.Builder(maxDoc);
+        for (int docId = 0; docId < maxDoc; docId++) {
+            if (reader.isDeleted(docId)) continue;
+            Document doc = reader.document(docId, IndexSearcher.RESULT_FIELD_SELECTOR);
+            documentTypes[docId] = (byte) DocumentType.valueOf(doc.get("documentType")).ordinal();
+            nameBuilder.set(docId, doc.get("name"));
+            setSplit(urlPageBuilder, urlAnchorBuilder, docId, doc.get("url"));
+            classNameBuilder.set(docId, doc.get("className"));
+            packageNameBuilder.set(docId, doc.get("package"));
+            setSplit(ensemblePathPageBuilder, ensemblePathAnchorBuilder, docId, doc.get("ensemblePath"));
+            shortDescriptionBuilder.set(docId, doc.get("shortDescription"));
+        }
+        names = nameBuilder.build();
+        urlPages = urlPageBuilder.build();
+        urlAnchors = urlAnchorBuilder.build();
+        classNames = classNameBuilder.build();
+        packageNames = packageNameBuilder.build();
+        ensemblePathPages = ensemblePathPageBuilder.build();
+        ensemblePathAnchors = ensemblePathAnchorBuilder.build();
+        shortDescriptions = shortDescriptionBuilder.build();
+    }
+
+    /**
+     * Load the result fields of every document in an index
+     *
+     * @param reader Reader for the index
+     * @return The loaded store
+     * @throws IOException If there was a problem reading stored fields
+     */
+    public static ResultStore load(IndexReader reader) throws IOException {
+        return new ResultStore(reader);
+    }
+
+    private static void setSplit(StringColumn.Builder pages, StringColumn.Builder anchors, int docId, String value) {
+        if (value == null) return;
+        int hash = value.indexOf('#');
+        if (hash < 0) {
+            pages.set(docId, value);
+        } else {
+            pages.set(docId, value.substring(0, hash));
+            anchors.set(docId, value.substring(hash));
+        }
+    }
+
+    private static String join(StringColumn pages, StringColumn anchors, int docId) {
+        String page = pages.get(docId);
+        String anchor = anchors.get(docId);
+        return anchor == null ? page : page + anchor;
+    }
+
+    /**
+     * Create the search result for a document
+     *
+     * @param docId The document id
+     * @return New search result
+     */
+    public SearchResult getResult(int docId) {
+        return new SearchResult(
+                DocumentType.values()[documentTypes[docId]],
+                names.get(docId),
+                join(urlPages, urlAnchors, docId),
+                classNames.get(docId),
+                packageNames.get(docId),
+                join(ensemblePathPages, ensemblePathAnchors, docId),
+                shortDescriptions.get(docId)
+        );
+    }
+
+    /**
+     * @return Approximate number of bytes used by the columns
+     */
+    public long getSizeInBytes() {
+        return documentTypes.length + names.getSizeInBytes() + urlPages.getSizeInBytes()
+                + urlAnchors.getSizeInBytes() + classNames.getSizeInBytes() + packageNames.getSizeInBytes()
+                + ensemblePathPages.getSizeInBytes() + ensemblePathAnchors.getSizeInBytes()
+                + shortDescriptions.getSizeInBytes();
+    }
+
+    /**
+     * Dictionary encoded column of strings
+     */
+    private static class StringColumn {
+        private final int[] ids; // dictionary id per document, -1 for no value
+        private final byte[] values; // utf-8 of all distinct values
+        private final int[] offsets; // start of each distinct value in values, plus one past the end
+
+        private StringColumn(int[] ids, byte[] values, int[] offsets) {
+            this.ids = ids;
+            this.values = values;
+            this.offsets = offsets;
+        }
+
+        private String get(int docId) {
+            int id = ids[docId];
+            if (id < 0) return null;
+            try {
+                return new String(values, offsets[id], offsets[id + 1] - offsets[id], "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private long getSizeInBytes() {
+            return ids.length * 4L + values.length + offsets.length * 4L;
+        }
+
+        private static class Builder {
+            private final int[] ids;
+            private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+            private final List<String> distinctValues = new ArrayList<String>();
+
+            private Builder(int maxDoc) {
+                ids = new int[maxDoc];
+                Arrays.fill(ids, -1);
+            }
+
+            private void set(int docId, String value) {
+                if (value == null) return;
+                Integer id = dictionary.get(value);
+                if (id == null) {
+                    id = distinctValues.size();
+                    dictionary.put(value, id);
+                    distinctValues.add(value);
+                }
+                ids[docId] = id;
+            }
+
+            private StringColumn build() throws UnsupportedEncodingException {
+                int[] offsets = new int[distinctValues.size() + 1];
+                byte[][] encoded = new byte[distinctValues.size()][];
+                int length = 0;
+                for (int i = 0; i < encoded.length; i++) {
+                    encoded[i] = distinctValues.get(i).getBytes("UTF-8");
+                    offsets[i] = length;
+                    length += encoded[i].length;
+                }
+                offsets[encoded.length] = length;
+                byte[] values = new byte[length];
+                for (int i = 0; i < encoded.length; i++) {
+                    System.arraycopy(encoded[i], 0, values, offsets[i], encoded[i].length);
+                }
+                return new StringColumn(ids, values, offsets);
+            }
+        }
+    }
+
+    /**
+     * Simple command line test application, reports the memory used by the store and compares the time taken to
+     * build the results of some queries from stored fields and from the store
+     */
+    public static void main(String[] args) throws Exception {
+        Directory directory = CachedIndexDirectory.openIndexDirectory();
+        IndexReader reader = IndexReader.open(directory, true);
+        org.apache.lucene.search.IndexSearcher searcher = new org.apache.lucene.search.IndexSearcher(reader);
+        long before = CachedIndexDirectory.usedHeap();
+        long start = System.nanoTime();
+        ResultStore store = load(reader);
+        long loadTime = System.nanoTime() - start;
+        long heap = CachedIndexDirectory.usedHeap() - before;
+        System.out.printf("Loaded %d documents in %.1f ms, columns %d KB, heap %d KB%n", reader.numDocs(),
+                loadTime / 1e6, store.getSizeInBytes() / 1024, heap / 1024);
+        // hits for a set of queries, 5 per type as the search box shows
+        MultiFieldQueryParser parser = new MultiFieldQueryParser(Version.LUCENE_31, new String[]{"name", "description"},
+                new CodeAnalyzer(Version.LUCENE_31, false));
+        List<int[]> queryHits = new ArrayList<int[]>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                ResultStore.class.getResourceAsStream("typing-sessions.txt"), "UTF-8"));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.length() == 0 || line.startsWith("#")) continue;
+            TopDocs topDocs = searcher.search(parser.parse(line), DocumentType.values().length * 5);
+            int[] hits = new int[topDocs.scoreDocs.length];
+            int i = 0;
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) hits[i++] = scoreDoc.doc;
+            queryHits.add(hits);
+        }
+        in.close();
+        long bestStoredTime = Long.MAX_VALUE;
+        long bestStoreTime = Long.MAX_VALUE;
+        for (int run = 0; run < 20; run++) {
+            start = System.nanoTime();
+            for (int[] hits : queryHits) {
+                for (int docId : hits) {
+                    Document doc = searcher.doc(docId, IndexSearcher.RESULT_FIELD_SELECTOR);
+                    new SearchResult(DocumentType.valueOf(doc.get("documentType")), doc.get("name"), doc.get("url"),
+                            doc.get("className"), doc.get("package"), doc.get("ensemblePath"),
+                            doc.get("shortDescription"));
+                }
+            }
+            bestStoredTime = Math.min(bestStoredTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int[] hits : queryHits) {
+                for (int docId : hits) store.getResult(docId);
+            }
+            bestStoreTime = Math.min(bestStoreTime, System.nanoTime() - start);
+        }
+        System.out.printf("Best time per query of %d: stored fields %.1f us, result store %.1f us%n", queryHits.size(),
+                bestStoredTime / 1e3 / queryHits.size(), bestStoreTime / 1e3 / queryHits.size());
+        searcher.close();
+        reader.close();
+        directory.close();
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.lucene.queryParser.ParseException;
+
+/**
+ * Headless batch query runner for measuring search performance. Runs every query in a file a number of times against
+ * one shared {@link IndexSearcher} from a number of threads at once and reports queries per second, latency
+ * percentiles and bytes allocated per query. Allocation is counted over every thread in the JVM, so work the searcher
+ * hands to its own pools is included. Needs no display so search regressions can be caught on any machine.
+ * <p>
+ * The default query corpus query-corpus.txt is drawn from sample names and API class names, with prefixes, typos,
+ * member names and description phrases. The query cache is off by default so every query really searches the index.
+ */
+public class SearchBenchmark {
+    private final IndexSearcher indexSearcher;
+    private final List<String> queries;
+    private final int threads;
+
+    public SearchBenchmark(IndexSearcher indexSearcher, List<String> queries, int threads) {
+        this.indexSearcher = indexSearcher;
+        this.queries = queries;
+        this.threads = threads;
+    }
+
+    /**
+     * Run all the queries the given number of times, split evenly between the threads
+     *
+     * @param passes Number of times to run each query
+     * @return The measurements of the run
+     */
+    public Result run(final int passes) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<long[]>> futures = new ArrayList<Future<long[]>>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                futures.add(executor.submit(new Callable<long[]>() {
+                    @Override public long[] call() throws Exception {
+                        start.await();
+                        return runQueries(thread, passes);
+                    }
+                }));
+            }
+            Map<Long, Long> allocatedBefore = allocatedBytes();
+            long startNanos = System.nanoTime();
+            start.countDown();
+            List<long[]> threadLatencies = new ArrayList<long[]>();
+            int failedQueries = 0;
+            for (Future<long[]> future : futures) {
+                long[] latencies = future.get();
+                // last slot holds the number of failed queries of the thread
+                failedQueries += (int) latencies[latencies.length - 1];
+                threadLatencies.add(Arrays.copyOf(latencies, latencies.length - 1));
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+            long allocatedBytes = allocatedSince(allocatedBefore);
+            return new Result(merge(threadLatencies), elapsedNanos, allocatedBytes, failedQueries);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Run this thread's share of the queries, every thread starts at a different point in the corpus so they are
+     * not all searching for the same query at the same time
+     */
+    private long[] runQueries(int thread, int passes) {
+        int count = 0;
+        for (int i = thread; i < queries.size() * passes; i += threads) count ++;
+        long[] latencies = new long[count + 1];
+        int n = 0;
+        int failed = 0;
+        for (int i = thread; i < queries.size() * passes; i += threads) {
+            String query = queries.get(i % queries.size());
+            long start = System.nanoTime();
+            try {
+                indexSearcher.search(query);
+            } catch (ParseException e) {
+                failed ++;
+            }
+            latencies[n++] = System.nanoTime() - start;
+        }
+        latencies[count] = failed;
+        return latencies;
+    }
+
+    /**
+     * Get the bytes allocated so far by every live thread, or null if the JVM can not tell us
+     */
+    private static Map<Long, Long> allocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!sunThreadBean.isThreadAllocatedMemorySupported() || !sunThreadBean.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        long[] threadIds = sunThreadBean.getAllThreadIds();
+        long[] allocated = sunThreadBean.getThreadAllocatedBytes(threadIds);
+        Map<Long, Long> allocatedByThread = new HashMap<Long, Long>();
+        for (int i = 0; i < threadIds.length; i++) {
+            if (allocated[i] >= 0) allocatedByThread.put(threadIds[i], allocated[i]);
+        }
+        return allocatedByThread;
+    }
+
+    /**
+     * Get the bytes allocated by all threads since an earlier call to {@link #allocatedBytes()}, threads started since
+     * count in full. Threads that have ended since are missed, the benchmark and search pool threads live on.
+     *
+     * @return The bytes allocated or -1 if the JVM can not tell us
+     */
+    private static long allocatedSince(Map<Long, Long> before) {
+        Map<Long, Long> after = allocatedBytes();
+        if (before == null || after == null) return -1;
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : after.entrySet()) {
+            Long previous = before.get(entry.getKey());
+            total += entry.getValue() - (previous == null ? 0 : previous);
+        }
+        return total;
+    }
+
+    private static long[] merge(List<long[]> arrays) {
+        int length = 0;
+        for (long[] array : arrays) length += array.length;
+        long[] merged = new long[length];
+        int offset = 0;
+        for (long[] array : arrays) {
+            System.arraycopy(array, 0, merged, offset, array.length);
+            offset += array.length;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * Measurements of one benchmark run
+     */
+    public static class Result {
+        private final long[] sortedLatencies;
+        private final long elapsedNanos;
+        private final long allocatedBytes;
+        private final int failedQueries;
+
+        private Result(long[] sortedLatencies, long elapsedNanos, long allocatedBytes, int failedQueries) {
+            this.sortedLatencies = sortedLatencies;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.failedQueries = failedQueries;
+        }
+
+        public int getQueryCount() {
+            return sortedLatencies.length;
+        }
+
+        public int getFailedQueries() {
+            return failedQueries;
+        }
+
+        public double getQueriesPerSecond() {
+            return sortedLatencies.length / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Get a latency percentile in nanoseconds
+         *
+         * @param percentile Percentile between 0 and 100
+         */
+        public long getPercentile(double percentile) {
+            if (sortedLatencies.length == 0) return 0;
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(sortedLatencies.length - 1, index))];
+        }
+
+        /**
+         * Get the mean bytes allocated per query, or -1 if allocation could not be measured
+         */
+        public long getAllocatedBytesPerQuery() {
+            if (allocatedBytes < 0 || sortedLatencies.length == 0) return -1;
+            return allocatedBytes / sortedLatencies.length;
+        }
+
+        @Override public String toString() {
+            long allocated = getAllocatedBytesPerQuery();
+            return String.format("%d queries, %.0f queries/s, p50 %.1f us, p90 %.1f us, p99 %.1f us, max %.1f us, %s"
+                    + ", %d failed to parse",
+                    getQueryCount(), getQueriesPerSecond(), getPercentile(50) / 1e3, getPercentile(90) / 1e3,
+                    getPercentile(99) / 1e3, getPercentile(100) / 1e3,
+                    allocated < 0 ? "allocation unknown" : String.format("%.1f KB/query", allocated / 1024d),
+                    failedQueries);
+        }
+    }
+
+    /**
+     * Load queries one per line, skipping blank lines and lines starting with #
+     *
+     * @param in Stream to read, closed when done
+     */
+    public static List<String> loadQueries(InputStream in) throws IOException {
+        List<String> queries = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0 && !line.startsWith("#")) queries.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return queries;
+    }
+
+    /**
+     * Command line batch mode, options are:
+     * <pre>
+     *   -queries file    file of queries, one per line, defaults to the bundled query-corpus.txt
+     *   -threads n       comma separated list of thread counts to run at, defaults to 1
+     *   -passes n        number of times to run each query, defaults to 5
+     *   -warmup n        number of passes to run first without measuring, defaults to 2
+     *   -cache n         size of the query cache, defaults to 0 so every query searches the index
+     * </pre>
+     */
+    public static void main(String[] args) throws Exception {
+        String queryFile = null;
+        String[] threadCounts = {"1"};
+        int passes = 5;
+        int warmUpPasses = 2;
+        int cacheSize = 0;
+        for (int i = 0; i < args.length; i++) {
+            if ("-queries".equals(args[i]) && i + 1 < args.length) {
+                queryFile = args[++i];
+            } else if ("-threads".equals(args[i]) && i + 1 < args.length) {
+                threadCounts = args[++i].split(",");
+            } else if ("-passes".equals(args[i]) && i + 1 < args.length) {
+                passes = Integer.parseInt(args[++i]);
+            } else if ("-warmup".equals(args[i]) && i + 1 < args.length) {
+                warmUpPasses = Integer.parseInt(args[++i]);
+            } else if ("-cache".equals(args[i]) && i + 1 < args.length) {
+                cacheSize = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Usage: SearchBenchmark [-queries file] [-threads n,n..] [-passes n] [-warmup n]"
+                        + " [-cache n]");
+                System.exit(1);
+            }
+        }
+        List<String> queries = loadQueries(queryFile == null
+                ? SearchBenchmark.class.getResourceAsStream("query-corpus.txt") : new FileInputStream(queryFile));
+        long start = System.nanoTime();
+        IndexSearcher indexSearcher = new IndexSearcher(cacheSize);
+        System.out.printf("Opened index in %.1f ms, %d queries, %d processors%n", (System.nanoTime() - start) / 1e6,
+                queries.size(), Runtime.getRuntime().availableProcessors());
+        for (String threadCount : threadCounts) {
+            SearchBenchmark benchmark = new SearchBenchmark(indexSearcher, queries, Integer.parseInt(threadCount.trim()));
+            if (warmUpPasses > 0) benchmark.run(warmUpPasses);
+            indexSearcher.getQueryCache().clear();
+            System.out.printf("%2d threads: %s%n", benchmark.threads, benchmark.run(passes));
+        }
+    }
+}
@@ -42,8 +42,16 @@ public class SearchResult {
     private String packageName;
     private String ensemblePath;
     private String shortDescription;
+    private String version;
 
     public SearchResult(DocumentType documentType, String name, String url, String className, String packageName, String ensemblePath, String shortDescription) {
+        this(documentType, name, url, className, packageName, ensemblePath, shortDescription, null);
+    }
+
+    /**
+     * @param version The javadoc version the result was found in, or null for the current docs
+     */
+    public SearchResult(DocumentType documentType, String name, String url, String className, String packageName, String ensemblePath, String shortDescription, String version) {
         this.documentType = documentType;
         this.name = name;
         this.url = url;
@@ -51,6 +59,7 @@ public class SearchResult {
         this.packageName = packageName;
         this.ensemblePath = ensemblePath;
         this.shortDescription = shortDescription;
+        this.version = version;
     }
 
     public DocumentType getDocumentType() {
@@ -81,6 +90,13 @@ public class SearchResult {
         return shortDescription;
     }
 
+    /**
+     * @return The javadoc version the result was found in, or null for the current docs
+     */
+    public String getVersion() {
+        return version;
+    }
+
     @Override public String toString() {
         return "SearchResult{" +
                 "\n     documentType=" + documentType +
@@ -90,6 +106,7 @@ public class SearchResult {
                 "\n     packageName='" + packageName + '\'' +
                 "\n     ensemblePath='" + ensemblePath + '\'' +
                 "\n     shortDescription='" + shortDescription + '\'' +
+                "\n     version='" + version + '\'' +
                 "\n}";
     }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.util.Duration;
+import org.apache.lucene.store.AlreadyClosedException;
+
+/**
+ * Background search pipeline for the search box. Queries are debounced on the FX thread, then run against the
+ * index on a worker thread. Starting a new query cancels any query that is still waiting or running, and as this is
+ * a Service only the value of the most recent query is ever published back to the FX thread.
+ * <p>
+ * All services, and anything else that needs to search, share the one thread safe {@link IndexSearcher} from
+ * {@link #getIndexSearcher()}. The index can be opened ahead of time with {@link #warmUp()}, searches that arrive before
+ * the warm up has finished wait for it rather than loading a second copy of the index. Queries go through the
+ * {@link FederatedSearcher} so they also search any other javadoc versions selected.
+ */
+public class SearchService extends Service<Map<DocumentType, List<SearchResult>>> {
+    private static final Duration DEBOUNCE_DELAY = Duration.millis(150);
+    // searchers are only replaced when the index is updated, so more than a few in a row means something is wrong
+    private static final int MAX_SEARCH_ATTEMPTS = 3;
+    // daemon workers shared by all services, each service only runs one query at a time
+    private static final ExecutorService SEARCH_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Ensemble Search");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static volatile IndexWarmUpTask warmUpTask;
+    private static IndexSearcher indexSearcher; // guarded by SearchService.class
+    private final Timeline debounceTimer = new Timeline();
+    private final ReadOnlyDoubleWrapper searchLatency = new ReadOnlyDoubleWrapper(this, "searchLatency", 0);
+    private String query;
+
+    public SearchService() {
+        setExecutor(SEARCH_EXECUTOR);
+        debounceTimer.getKeyFrames().add(new KeyFrame(DEBOUNCE_DELAY, new EventHandler<ActionEvent>() {
+            @Override public void handle(ActionEvent actionEvent) {
+                restart();
+            }
+        }));
+    }
+
+    /**
+     * Start opening and warming up the search index on a background thread. Should be called once from the FX thread
+     * at application start.
+     */
+    public static void warmUp() {
+        if (warmUpTask == null) {
+            warmUpTask = new IndexWarmUpTask();
+            Thread thread = new Thread(warmUpTask, "Ensemble Search Warm Up");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Request a search for the given query. The search starts once no new query has been requested for the debounce
+     * delay, any earlier search still in progress is cancelled.
+     *
+     * @param query The query string as typed by the user
+     */
+    public void search(String query) {
+        this.query = query;
+        debounceTimer.playFromStart();
+    }
+
+    /**
+     * Cancel any pending or running search
+     */
+    public void cancelSearch() {
+        debounceTimer.stop();
+        cancel();
+    }
+
+    /**
+     * Time in milliseconds the last completed query spent in the index on the worker thread
+     *
+     * @return latency property of last completed query
+     */
+    public ReadOnlyDoubleProperty searchLatencyProperty() {
+        return searchLatency.getReadOnlyProperty();
+    }
+
+    public double getSearchLatency() {
+        return searchLatency.get();
+    }
+
+    /**
+     * Get the searcher shared by the whole application, waiting for the warm up if one is in progress. Falls back to
+     * opening the index directly if there was no warm up or it failed. May block for as long as it takes to open the
+     * index so should not be called on the FX thread.
+     *
+     * @return The shared thread safe searcher
+     * @throws InterruptedException If interrupted while waiting for the warm up
+     */
+    public static synchronized IndexSearcher getIndexSearcher() throws InterruptedException {
+        if (indexSearcher == null) {
+            IndexWarmUpTask task = warmUpTask;
+            if (task != null) {
+                try {
+                    indexSearcher = task.get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (indexSearcher == null) indexSearcher = new IndexSearcher();
+        }
+        return indexSearcher;
+    }
+
+    /**
+     * Replace the searcher shared by the whole application, for example with one over a newly updated index. Searches
+     * in progress finish on the old searcher, which is then closed.
+     *
+     * @param newIndexSearcher The searcher to use from now on
+     */
+    public static void setIndexSearcher(IndexSearcher newIndexSearcher) {
+        IndexSearcher oldIndexSearcher;
+        synchronized (SearchService.class) {
+            oldIndexSearcher = indexSearcher;
+            indexSearcher = newIndexSearcher;
+        }
+        if (oldIndexSearcher != null) oldIndexSearcher.close();
+    }
+
+    @Override protected Task<Map<DocumentType, List<SearchResult>>> createTask() {
+        final String searchString = query;
+        return new Task<Map<DocumentType, List<SearchResult>>>() {
+            private long searchNanos;
+
+            @Override protected Map<DocumentType, List<SearchResult>> call() throws Exception {
+                long start = System.nanoTime();
+                Map<DocumentType, List<SearchResult>> results = null;
+                for (int attempt = 1; results == null; attempt++) {
+                    if (isCancelled()) return null;
+                    try {
+                        results = FederatedSearcher.getInstance().search(searchString);
+                    } catch (AlreadyClosedException e) {
+                        // the searcher was replaced by a newer one before we got to it, search again on the new one
+                        if (attempt == MAX_SEARCH_ATTEMPTS) throw e;
+                    }
+                }
+                searchNanos = System.nanoTime() - start;
+                return results;
+            }
+
+            @Override protected void succeeded() {
+                searchLatency.set(searchNanos / 1000000d);
+            }
+        };
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.search;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.CharTokenizer;
+import org.apache.lucene.analysis.FilteringTokenFilter;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.ReusableAnalyzerBase;
+import org.apache.lucene.analysis.StopFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.Version;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Analyzer for java source code. Only the java identifiers are kept, with numbers and java keywords dropped, so
+ * "node.setCacheHint(CacheHint.SPEED);" is "node", "setcachehint", "cachehint" and "speed". Identifiers are not split
+ * into sub words like {@link CodeAnalyzer} does for names, to keep the field small, type ahead finds them by prefix
+ * instead.
+ */
+public class SourceCodeAnalyzer extends ReusableAnalyzerBase {
+    /**
+     * Name of the field of java source code
+     */
+    public static final String SOURCE_CODE_FIELD = "code";
+    private static final String[] JAVA_KEYWORDS = {"abstract", "assert", "boolean", "break", "byte", "case", "catch",
+            "char", "class", "const", "continue", "default", "do", "double", "else", "enum", "extends", "false", "final",
+            "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long",
+            "native", "new", "null", "package", "private", "protected", "public", "return", "short", "static",
+            "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient", "true", "try",
+            "void", "volatile", "while"};
+    private final Version matchVersion;
+    private final CharArraySet javaKeywords;
+
+    /**
+     * @param matchVersion The lucene version to match tokenizing of
+     */
+    public SourceCodeAnalyzer(Version matchVersion) {
+        this.matchVersion = matchVersion;
+        this.javaKeywords = CharArraySet.unmodifiableSet(new CharArraySet(matchVersion, Arrays.asList(JAVA_KEYWORDS), false));
+    }
+
+    @Override protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+        Tokenizer source = new CharTokenizer(matchVersion, reader) {
+            @Override protected boolean isTokenChar(int c) {
+                return Character.isJavaIdentifierPart(c);
+            }
+        };
+        TokenStream sink = new FilteringTokenFilter(true, source) {
+            private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+            @Override protected boolean accept() {
+                // identifiers can not start with a digit, so this is a number
+                return !Character.isDigit(termAttribute.charAt(0));
+            }
+        };
+        sink = new LowerCaseFilter(matchVersion, sink);
+        sink = new StopFilter(matchVersion, sink, javaKeywords);
+        return new TokenStreamComponents(source, sink);
+    }
+}
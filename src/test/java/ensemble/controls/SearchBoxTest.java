@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2008, 2012 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ensemble.controls;
+
+import ensemble.search.DocumentType;
+import ensemble.search.SearchResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.CustomMenuItem;
+import javafx.scene.control.MenuItem;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the search results menu reuses its rows instead of building new nodes for every search
+ */
+public class SearchBoxTest {
+
+    @BeforeClass public static void startToolkit() {
+        new JFXPanel(); // starts the JavaFX toolkit
+    }
+
+    @Test public void populateMenuReusesRows() throws Exception {
+        runAndWait(new Runnable() {
+            @Override public void run() {
+                SearchBox searchBox = new SearchBox();
+                searchBox.populateMenu(results(DocumentType.CLASS, 5, DocumentType.PROPERTY, 5));
+                int items = searchBox.contextMenu.getItems().size();
+                int nodes = countRowNodes(searchBox);
+                assertEquals(10, countVisibleItems(searchBox));
+
+                searchBox.populateMenu(results(DocumentType.METHOD, 3, DocumentType.SAMPLE, 4));
+                assertEquals(items, searchBox.contextMenu.getItems().size());
+                assertEquals(nodes, countRowNodes(searchBox));
+                assertEquals(7, countVisibleItems(searchBox));
+            }
+        });
+    }
+
+    @Test public void populateMenuGrowsForLongerResults() throws Exception {
+        runAndWait(new Runnable() {
+            @Override public void run() {
+                SearchBox searchBox = new SearchBox();
+                searchBox.populateMenu(results(DocumentType.CLASS, 2, DocumentType.PROPERTY, 2));
+                int nodesPerRow = countRowNodes(searchBox) / searchBox.contextMenu.getItems().size();
+
+                searchBox.populateMenu(results(DocumentType.CLASS, 5, DocumentType.METHOD, 5));
+                assertEquals(10, searchBox.contextMenu.getItems().size());
+                assertEquals(10 * nodesPerRow, countRowNodes(searchBox));
+                assertEquals(10, countVisibleItems(searchBox));
+            }
+        });
+    }
+
+    private static Map<DocumentType, List<SearchResult>> results(DocumentType type1, int count1,
+                                                                 DocumentType type2, int count2) {
+        Map<DocumentType, List<SearchResult>> results = new TreeMap<DocumentType, List<SearchResult>>();
+        results.put(type1, createResults(type1, count1));
+        results.put(type2, createResults(type2, count2));
+        return results;
+    }
+
+    private static List<SearchResult> createResults(DocumentType type, int count) {
+        List<SearchResult> results = new ArrayList<SearchResult>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(new SearchResult(type, type.name() + i, null, "Node", "javafx.scene", null, "description " + i));
+        }
+        return results;
+    }
+
+    private static int countVisibleItems(SearchBox searchBox) {
+        int count = 0;
+        for (MenuItem item : searchBox.contextMenu.getItems()) {
+            if (item.isVisible()) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Count the nodes of all rows, the hBox of each row and everything under it
+     */
+    private static int countRowNodes(SearchBox searchBox) {
+        int count = 0;
+        for (MenuItem item : searchBox.contextMenu.getItems()) {
+            count += countNodes(((CustomMenuItem) item).getContent());
+        }
+        return count;
+    }
+
+    private static int countNodes(Node node) {
+        int count = 1;
+        if (node instanceof Parent) {
+            for (Node child : ((Parent) node).getChildrenUnmodifiable()) count += countNodes(child);
+        }
+        return count;
+    }
+
+    /**
+     * Run on the JavaFX thread, where the search box has to be used, and rethrow any failure on the test thread
+     */
+    private static void runAndWait(final Runnable runnable) throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Throwable[] failure = new Throwable[1];
+        Platform.runLater(new Runnable() {
+            @Override public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        done.await();
+        if (failure[0] instanceof Error) throw (Error) failure[0];
+        if (failure[0] instanceof Exception) throw (Exception) failure[0];
+    }
+}